@@ -0,0 +1,254 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.txn.JenaTransaction;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CsrGraph} projection that follows changes to its source. Changes mark the current projection stale
+ * and the next {@link #get()} rebuilds it, so a burst of writes costs one rebuild.
+ *
+ * <ul>
+ *     <li>{@link #watch(Graph, Node...)} registers a {@link GraphListener} with the graph and is marked stale by
+ *     any change to a triple of one of the predicates.</li>
+ *     <li>{@link #watch(Dataset, Node...)} projects the default graph of a transactional dataset, rebuilding in a
+ *     read transaction, and is marked stale when a {@link JenaTransaction} write on the dataset commits.
+ *     Changes committed other than through {@link JenaTransaction} are not seen.</li>
+ * </ul>
+ * Close the index to stop watching.
+ */
+public class AdjacencyIndex implements AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(AdjacencyIndex.class);
+
+    private final Supplier<CsrGraph> builder;
+    private final BooleanSupplier uncommitted;
+    private final Runnable unregister;
+    private volatile CsrGraph current = null;
+    private volatile boolean stale = true;
+    private long rebuilds = 0;
+
+    private AdjacencyIndex(Supplier<CsrGraph> builder, BooleanSupplier uncommitted, Runnable unregister) {
+        this.builder = builder;
+        this.uncommitted = uncommitted;
+        this.unregister = unregister;
+    }
+
+    /**
+     * Project a graph, following changes notified by its event manager
+     * @param graph the graph
+     * @param predicates the predicates whose triples are edges
+     * @return the index (built on first use)
+     */
+    public static AdjacencyIndex watch(final Graph graph, final Node... predicates) {
+        final Node[] edges = predicates.clone();
+        final Listener listener = new Listener(edges);
+        AdjacencyIndex index = new AdjacencyIndex(() -> CsrGraph.build(graph, edges), () -> false,
+                () -> graph.getEventManager().unregister(listener));
+        listener.index = index;
+        graph.getEventManager().register(listener);
+        return index;
+    }
+
+    /**
+     * Project the default graph of a dataset, following commits made through {@link JenaTransaction} (on any
+     * {@link Dataset} over the same {@link DatasetGraph}). Used inside a WRITE
+     * transaction on the dataset the projection is built from the uncommitted changes but not kept, since they
+     * may yet be aborted.
+     * @param dataset the dataset
+     * @param predicates the predicates whose triples are edges
+     * @return the index (built on first use)
+     */
+    public static AdjacencyIndex watch(final Dataset dataset, final Node... predicates) {
+        final Node[] edges = predicates.clone();
+        final AdjacencyIndex[] holder = new AdjacencyIndex[1];
+        final DatasetGraph datasetGraph = dataset.asDatasetGraph();
+        final Consumer<Dataset> commitListener = committed -> {
+            if (committed.asDatasetGraph() == datasetGraph) {
+                holder[0].invalidate();
+            }
+        };
+        holder[0] = new AdjacencyIndex(
+                () -> JenaTransaction.readWith(() -> CsrGraph.build(dataset.getDefaultModel().getGraph(), edges), dataset),
+                () -> JenaTransaction.isWriting(dataset),
+                () -> JenaTransaction.removeCommitListener(commitListener));
+        JenaTransaction.addCommitListener(commitListener);
+        return holder[0];
+    }
+
+    /**
+     * @return the current projection, rebuilt first if it is stale
+     */
+    public CsrGraph get() {
+        if (uncommitted.getAsBoolean()) {
+            // built from changes that may be aborted, so neither kept nor marked fresh
+            return builder.get();
+        }
+        CsrGraph graph = current;
+        if (graph == null || stale) {
+            synchronized (this) {
+                if (current == null || stale) {
+                    // clear first, so a change during the build leaves it stale
+                    stale = false;
+                    long start = System.nanoTime();
+                    current = builder.get();
+                    rebuilds++;
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Built adjacency index of " + current.nodeCount() + " nodes and " + current.edgeCount()
+                                + " edges in " + (System.nanoTime() - start) / 1000000 + "ms");
+                    }
+                }
+                graph = current;
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * A structure computed from the projection (e.g. a {@link HierarchyIndex}), recomputed when next asked for
+     * after the projection is rebuilt
+     * @param derivation computes the structure from a projection
+     * @param <T> the type of structure
+     * @return supplies the structure for the current projection
+     */
+    public <T> Supplier<T> derived(final Function<CsrGraph, T> derivation) {
+        return new Supplier<T>() {
+            private CsrGraph source = null;
+            private T value = null;
+
+            @Override
+            public synchronized T get() {
+                CsrGraph graph = AdjacencyIndex.this.get();
+                if (graph != source) {
+                    value = derivation.apply(graph);
+                    source = graph;
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Mark the projection stale, so it is rebuilt when next used
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * @return true if the projection will be rebuilt when next used
+     */
+    public boolean isStale() {
+        return stale || current == null;
+    }
+
+    /**
+     * @return the number of times the projection has been built
+     */
+    public synchronized long rebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * Stop following changes (the last projection remains usable)
+     */
+    @Override
+    public void close() {
+        unregister.run();
+    }
+
+    /**
+     * Marks the index stale on changes to edge triples. Bulk and other events are assumed to change edges.
+     */
+    private static class Listener implements GraphListener {
+        private final Set<Node> predicates;
+        private AdjacencyIndex index;
+
+        private Listener(Node[] predicates) {
+            this.predicates = new HashSet<>(Arrays.asList(predicates));
+        }
+
+        private void changed(Triple triple) {
+            if (predicates.contains(triple.getPredicate())) {
+                index.invalidate();
+            }
+        }
+
+        private void changed(Iterable<Triple> triples) {
+            for (Triple triple : triples) {
+                changed(triple);
+            }
+        }
+
+        @Override
+        public void notifyAddTriple(Graph g, Triple t) {
+            changed(t);
+        }
+
+        @Override
+        public void notifyAddArray(Graph g, Triple[] triples) {
+            changed(Arrays.asList(triples));
+        }
+
+        @Override
+        public void notifyAddList(Graph g, List<Triple> triples) {
+            changed(triples);
+        }
+
+        @Override
+        public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+            index.invalidate();
+        }
+
+        @Override
+        public void notifyAddGraph(Graph g, Graph added) {
+            index.invalidate();
+        }
+
+        @Override
+        public void notifyDeleteTriple(Graph g, Triple t) {
+            changed(t);
+        }
+
+        @Override
+        public void notifyDeleteList(Graph g, List<Triple> triples) {
+            changed(triples);
+        }
+
+        @Override
+        public void notifyDeleteArray(Graph g, Triple[] triples) {
+            changed(Arrays.asList(triples));
+        }
+
+        @Override
+        public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+            index.invalidate();
+        }
+
+        @Override
+        public void notifyDeleteGraph(Graph g, Graph removed) {
+            index.invalidate();
+        }
+
+        @Override
+        public void notifyEvent(Graph source, Object value) {
+            index.invalidate();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeFingerprint;
+import com.asteroid.duck.jena.util.impl.NodeNumbers;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+/**
+ * An aggregate function computed per group by {@link ResultStream#groupBy(java.util.List, Aggregate...)}.
+ *
+ * Every aggregate keeps its running state as a few primitive longs inside the single <code>long[]</code> of its
+ * {@link AggregateGroup}, so no boxed accumulators are allocated per row or per group. Numeric aggregates
+ * (sum, min, max, avg) ignore unbound and non-numeric values.
+ */
+public final class Aggregate {
+    /** Default HyperLogLog precision: 2<sup>10</sup> registers (1KB per group), about 3% standard error */
+    public static final int DEFAULT_PRECISION = 10;
+
+    enum Kind { COUNT, SUM, MIN, MAX, AVG, APPROX_DISTINCT }
+
+    private final Kind kind;
+    private final Var var;
+    private final int precision;
+
+    private Aggregate(Kind kind, String variable, int precision) {
+        this.kind = kind;
+        this.var = variable == null ? null : Var.alloc(variable);
+        this.precision = precision;
+    }
+
+    /**
+     * @return an aggregate counting the rows in each group
+     */
+    public static Aggregate count() {
+        return new Aggregate(Kind.COUNT, null, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate counting the rows in each group where a variable is bound
+     */
+    public static Aggregate count(String variable) {
+        return new Aggregate(Kind.COUNT, variable, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate summing the numeric values of a variable (as a double)
+     */
+    public static Aggregate sum(String variable) {
+        return new Aggregate(Kind.SUM, variable, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate of the smallest numeric value of a variable (null if there are none)
+     */
+    public static Aggregate min(String variable) {
+        return new Aggregate(Kind.MIN, variable, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate of the largest numeric value of a variable (null if there are none)
+     */
+    public static Aggregate max(String variable) {
+        return new Aggregate(Kind.MAX, variable, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate of the mean numeric value of a variable (null if there are none)
+     */
+    public static Aggregate avg(String variable) {
+        return new Aggregate(Kind.AVG, variable, 0);
+    }
+
+    /**
+     * @param variable the variable
+     * @return an aggregate estimating the number of distinct values of a variable, using HyperLogLog with
+     * the {@link #DEFAULT_PRECISION default precision}
+     */
+    public static Aggregate approxDistinct(String variable) {
+        return approxDistinct(variable, DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param variable the variable
+     * @param precision log<sub>2</sub> of the number of HyperLogLog registers (4 to 16). Each group uses
+     *                  2<sup>precision</sup> bytes and the standard error is about 1.04/sqrt(2<sup>precision</sup>)
+     * @return an aggregate estimating the number of distinct values of a variable
+     */
+    public static Aggregate approxDistinct(String variable, int precision) {
+        if (precision < 4 || precision > 16)
+            throw new IllegalArgumentException("Precision must be between 4 and 16");
+        return new Aggregate(Kind.APPROX_DISTINCT, variable, precision);
+    }
+
+    /**
+     * @return the variable aggregated, or null for a count of rows
+     */
+    public String getVariable() {
+        return var == null ? null : var.getVarName();
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase() + "(" + (var == null ? "*" : "?" + var.getVarName()) + ")";
+    }
+
+    /**
+     * @return the number of longs of state
+     */
+    int width() {
+        switch (kind) {
+            case COUNT:
+                return 1;
+            case APPROX_DISTINCT:
+                // one byte per register, packed eight to a long
+                return (1 << precision) / 8;
+            default:
+                // count of numeric values and double bits
+                return 2;
+        }
+    }
+
+    void init(long[] state, int offset) {
+        if (kind == Kind.MIN) {
+            state[offset + 1] = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        }
+        else if (kind == Kind.MAX) {
+            state[offset + 1] = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    void accumulate(long[] state, int offset, Binding binding) {
+        if (kind == Kind.COUNT) {
+            if (var == null || binding.get(var) != null) {
+                state[offset]++;
+            }
+            return;
+        }
+        Node node = binding.get(var);
+        if (node == null) {
+            return;
+        }
+        if (kind == Kind.APPROX_DISTINCT) {
+            long hash = NodeFingerprint.of(node);
+            int register = (int) (hash >>> (64 - precision));
+            int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+            if (rank > register(state, offset, register)) {
+                setRegister(state, offset, register, rank);
+            }
+            return;
+        }
+        double value = NodeNumbers.toDouble(node, Double.NaN);
+        // NaN is also the value of "NaN"^^xsd:double, which counts
+        if (Double.isNaN(value) && !NodeNumbers.isNumeric(node)) {
+            return;
+        }
+        state[offset]++;
+        double current = Double.longBitsToDouble(state[offset + 1]);
+        switch (kind) {
+            case MIN:
+                current = Math.min(current, value);
+                break;
+            case MAX:
+                current = Math.max(current, value);
+                break;
+            default:
+                current += value;
+                break;
+        }
+        state[offset + 1] = Double.doubleToRawLongBits(current);
+    }
+
+    void combine(long[] state, long[] other, int offset) {
+        switch (kind) {
+            case COUNT:
+                state[offset] += other[offset];
+                break;
+            case APPROX_DISTINCT:
+                for (int i = 0; i < 1 << precision; i++) {
+                    int rank = register(other, offset, i);
+                    if (rank > register(state, offset, i)) {
+                        setRegister(state, offset, i, rank);
+                    }
+                }
+                break;
+            default:
+                state[offset] += other[offset];
+                double a = Double.longBitsToDouble(state[offset + 1]);
+                double b = Double.longBitsToDouble(other[offset + 1]);
+                double combined = kind == Kind.MIN ? Math.min(a, b) : kind == Kind.MAX ? Math.max(a, b) : a + b;
+                state[offset + 1] = Double.doubleToRawLongBits(combined);
+                break;
+        }
+    }
+
+    Number value(long[] state, int offset) {
+        switch (kind) {
+            case COUNT:
+                return state[offset];
+            case APPROX_DISTINCT:
+                return estimate(state, offset);
+            case SUM:
+                return Double.longBitsToDouble(state[offset + 1]);
+            case AVG:
+                return state[offset] == 0 ? null : Double.longBitsToDouble(state[offset + 1]) / state[offset];
+            default:
+                return state[offset] == 0 ? null : Double.longBitsToDouble(state[offset + 1]);
+        }
+    }
+
+    /**
+     * The HyperLogLog estimate, with the linear counting correction for small cardinalities. The 64 bit
+     * fingerprint hash means no large range correction is needed.
+     */
+    private long estimate(long[] state, int offset) {
+        final int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            int rank = register(state, offset, i);
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static int register(long[] state, int offset, int register) {
+        return (int) (state[offset + (register >>> 3)] >>> ((register & 7) << 3)) & 0xFF;
+    }
+
+    private static void setRegister(long[] state, int offset, int register, int rank) {
+        int index = offset + (register >>> 3);
+        int shift = (register & 7) << 3;
+        state[index] = (state[index] & ~(0xFFL << shift)) | ((long) rank << shift);
+    }
+}
@@ -0,0 +1,176 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The aggregate values for one group produced by {@link ResultStream#groupBy(List, Aggregate...)}.
+ * Values are indexed in the order the aggregates were given.
+ */
+public final class AggregateGroup {
+    private final Layout layout;
+    private final Key key;
+    private final long[] state;
+
+    private AggregateGroup(Layout layout, Key key) {
+        this.layout = layout;
+        this.key = key;
+        this.state = new long[layout.width];
+        for (int i = 0; i < layout.aggregates.length; i++) {
+            layout.aggregates[i].init(state, layout.offsets[i]);
+        }
+    }
+
+    /**
+     * @return the values of the group variables (null where unbound)
+     */
+    public List<Node> getKey() {
+        return key;
+    }
+
+    /**
+     * @param variable a group variable
+     * @return its value for this group (null if unbound)
+     * @throws IllegalArgumentException if the variable is not one the results were grouped by
+     */
+    public Node getKey(String variable) {
+        for (int i = 0; i < layout.groupVars.length; i++) {
+            if (layout.groupVars[i].getVarName().equals(variable)) {
+                return key.nodes[i];
+            }
+        }
+        throw new IllegalArgumentException("Not a group variable: " + variable);
+    }
+
+    /**
+     * @return the number of aggregate values
+     */
+    public int size() {
+        return layout.aggregates.length;
+    }
+
+    /**
+     * @param index the index of the aggregate
+     * @return its value: a Long for counts, otherwise a Double (or null for a min/max/avg of no values)
+     */
+    public Number get(int index) {
+        return layout.aggregates[index].value(state, layout.offsets[index]);
+    }
+
+    /**
+     * @param index the index of the aggregate
+     * @return its value as a long (0 if null)
+     */
+    public long getLong(int index) {
+        Number value = get(index);
+        return value == null ? 0 : value.longValue();
+    }
+
+    /**
+     * @param index the index of the aggregate
+     * @return its value as a double (NaN if null)
+     */
+    public double getDouble(int index) {
+        Number value = get(index);
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(key.toString());
+        for (int i = 0; i < size(); i++) {
+            builder.append(' ').append(layout.aggregates[i]).append('=').append(get(i));
+        }
+        return builder.toString();
+    }
+
+    void accumulate(Binding binding) {
+        for (int i = 0; i < layout.aggregates.length; i++) {
+            layout.aggregates[i].accumulate(state, layout.offsets[i], binding);
+        }
+    }
+
+    void combine(AggregateGroup other) {
+        for (int i = 0; i < layout.aggregates.length; i++) {
+            layout.aggregates[i].combine(state, other.state, layout.offsets[i]);
+        }
+    }
+
+    /**
+     * The group variables and aggregates, and where each aggregate's state is in the array (shared by all groups)
+     */
+    static final class Layout {
+        private final Var[] groupVars;
+        private final Aggregate[] aggregates;
+        private final int[] offsets;
+        private final int width;
+
+        Layout(List<String> groupBy, Aggregate[] aggregates) {
+            if (aggregates.length == 0)
+                throw new IllegalArgumentException("At least one aggregate is required");
+            this.groupVars = ResultStream.vars(groupBy);
+            this.aggregates = aggregates.clone();
+            this.offsets = new int[aggregates.length];
+            int width = 0;
+            for (int i = 0; i < aggregates.length; i++) {
+                offsets[i] = width;
+                width += aggregates[i].width();
+            }
+            this.width = width;
+        }
+
+        Key key(Binding binding) {
+            Node[] nodes = new Node[groupVars.length];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = binding.get(groupVars[i]);
+            }
+            return new Key(nodes);
+        }
+
+        AggregateGroup group(Key key) {
+            return new AggregateGroup(this, key);
+        }
+    }
+
+    /**
+     * The group key: an immutable list of nodes with the hash code computed once
+     */
+    static final class Key extends AbstractList<Node> {
+        private final Node[] nodes;
+        private final int hash;
+
+        private Key(Node[] nodes) {
+            this.nodes = nodes;
+            this.hash = Arrays.asList(nodes).hashCode();
+        }
+
+        @Override
+        public Node get(int index) {
+            return nodes[index];
+        }
+
+        @Override
+        public int size() {
+            return nodes.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key other = (Key) o;
+                return hash == other.hash && Arrays.equals(nodes, other.nodes);
+            }
+            return super.equals(o);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeDictionary;
+import com.asteroid.duck.jena.util.impl.NodeNumbers;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * A materialized query result in a columnar layout, suited to scanning the same results many times.
+ *
+ * Each variable is a {@link Column} of dictionary encoded node IDs (an <code>int[]</code>) with one
+ * {@link NodeDictionary} shared by all columns. Numeric literals are also decoded once into a primitive
+ * <code>double[]</code> (and a <code>long[]</code> where every number in the column is an integer), so that the
+ * scan, filter and aggregate operators loop over arrays without touching any {@link org.apache.jena.rdf.model.RDFNode}s.
+ * Columns with no numbers at all (e.g. URIs or labels) have no numeric arrays.
+ *
+ * Row selections are represented as {@link BitSet}s which can be combined (and, or...) and passed to the
+ * aggregate operators.
+ */
+public class ColumnarResults {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<String> resultVars;
+    private final NodeDictionary dictionary;
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnarResults(List<String> resultVars, NodeDictionary dictionary, int[][] ids, int rowCount) {
+        this.resultVars = Collections.unmodifiableList(new ArrayList<>(resultVars));
+        this.dictionary = dictionary;
+        this.rowCount = rowCount;
+        this.columns = new Column[ids.length];
+        // parse each distinct node at most once
+        double[] numbers = new double[dictionary.size()];
+        byte[] kinds = new byte[dictionary.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(resultVars.get(i), Arrays.copyOf(ids[i], rowCount), numbers, kinds);
+        }
+    }
+
+    /**
+     * Read the (remaining) rows of a result set into columns
+     * @param resultSet the result set (this is consumed)
+     * @return the columnar results
+     */
+    public static ColumnarResults of(ResultSet resultSet) {
+        List<String> resultVars = resultSet.getResultVars();
+        Var[] vars = ResultStream.vars(resultVars);
+        NodeDictionary dictionary = new NodeDictionary();
+        int[][] ids = new int[vars.length][INITIAL_CAPACITY];
+        int capacity = INITIAL_CAPACITY;
+        int rows = 0;
+        while (resultSet.hasNext()) {
+            Binding binding = resultSet.nextBinding();
+            if (rows == capacity) {
+                capacity *= 2;
+                for (int i = 0; i < vars.length; i++) {
+                    ids[i] = Arrays.copyOf(ids[i], capacity);
+                }
+            }
+            for (int i = 0; i < vars.length; i++) {
+                ids[i][rows] = dictionary.encode(binding.get(vars[i]));
+            }
+            rows++;
+        }
+        return new ColumnarResults(resultVars, dictionary, ids, rows);
+    }
+
+    /**
+     * @return the variables (columns) in these results
+     */
+    public List<String> getResultVars() {
+        return resultVars;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the dictionary shared by all columns
+     */
+    public NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @param index the column index (in the order of {@link #getResultVars()})
+     * @return the column
+     */
+    public Column column(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @param variable the variable name
+     * @return the column for the variable
+     * @throws IllegalArgumentException if there is no such variable
+     */
+    public Column column(String variable) {
+        int index = resultVars.indexOf(variable);
+        if (index < 0) {
+            throw new IllegalArgumentException("No variable '" + variable + "' in results");
+        }
+        return columns[index];
+    }
+
+    /**
+     * @return a selection of all rows
+     */
+    public BitSet all() {
+        BitSet all = new BitSet(rowCount);
+        all.set(0, rowCount);
+        return all;
+    }
+
+    /**
+     * A single column (variable) of the results
+     */
+    public class Column {
+        private static final byte UNPARSED = 0;
+        private static final byte NUMBER = 1;
+        private static final byte INTEGER = 2;
+        private static final byte NOT_NUMBER = 3;
+
+        private final String name;
+        private final int[] ids;
+        private final double[] doubles;
+        private final long[] longs;
+
+        private Column(String name, int[] ids, double[] numbers, byte[] kinds) {
+            this.name = name;
+            this.ids = ids;
+            // first pass: classify the values, so columns without numbers (URIs, strings...) get no arrays
+            boolean numeric = false;
+            boolean allIntegral = true;
+            for (int id : ids) {
+                if (id == NodeDictionary.NONE) {
+                    continue;
+                }
+                if (kinds[id] == UNPARSED) {
+                    parse(id, numbers, kinds);
+                }
+                if (kinds[id] != NOT_NUMBER) {
+                    numeric = true;
+                    allIntegral &= kinds[id] == INTEGER;
+                }
+            }
+            if (numeric) {
+                doubles = new double[ids.length];
+                for (int row = 0; row < ids.length; row++) {
+                    int id = ids[row];
+                    doubles[row] = id == NodeDictionary.NONE || kinds[id] == NOT_NUMBER ? Double.NaN : numbers[id];
+                }
+            }
+            else {
+                doubles = null;
+            }
+            if (numeric && allIntegral) {
+                longs = new long[ids.length];
+                for (int row = 0; row < ids.length; row++) {
+                    int id = ids[row];
+                    if (id != NodeDictionary.NONE && kinds[id] == INTEGER) {
+                        longs[row] = NodeNumbers.toLong(dictionary.decode(id), 0);
+                    }
+                }
+            }
+            else {
+                longs = null;
+            }
+        }
+
+        private void parse(int id, double[] numbers, byte[] kinds) {
+            Node node = dictionary.decode(id);
+            double value = NodeNumbers.toDouble(node, Double.NaN);
+            if (Double.isNaN(value) && !NodeNumbers.isNumeric(node)) {
+                kinds[id] = NOT_NUMBER;
+            }
+            else {
+                numbers[id] = value;
+                kinds[id] = NodeNumbers.isLong(node) ? INTEGER : NUMBER;
+            }
+        }
+
+        /**
+         * @return the variable name of this column
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param row the row index
+         * @return the node in the given row, or null if unbound
+         */
+        public Node get(int row) {
+            return dictionary.decode(ids[row]);
+        }
+
+        /**
+         * @param row the row index
+         * @return the dictionary ID of the node in the given row, or {@link NodeDictionary#NONE} if unbound
+         */
+        public int id(int row) {
+            return ids[row];
+        }
+
+        /**
+         * @param row the row index
+         * @return the numeric value in the given row, or NaN if unbound or not a number
+         */
+        public double getDouble(int row) {
+            return doubles == null ? Double.NaN : doubles[row];
+        }
+
+        /**
+         * @return true if the column has at least one numeric value
+         */
+        public boolean hasNumbers() {
+            return doubles != null;
+        }
+
+        /**
+         * @return true if every numeric value in the column is an integer, so {@link #getLong(int)} may be used
+         */
+        public boolean hasLongs() {
+            return longs != null;
+        }
+
+        /**
+         * @param row the row index
+         * @return the integer value in the given row (0 if unbound or not a number)
+         * @throws IllegalStateException if the column does not have {@link #hasLongs() integer values}
+         */
+        public long getLong(int row) {
+            if (longs == null) {
+                throw new IllegalStateException("Column '" + name + "' is not an integer column");
+            }
+            return longs[row];
+        }
+
+        /**
+         * @return the dictionary IDs of each row in order
+         */
+        public IntStream ids() {
+            return Arrays.stream(ids);
+        }
+
+        /**
+         * @return the numeric values in order (NaN for unbound or non-numeric rows)
+         */
+        public DoubleStream doubles() {
+            if (doubles == null) {
+                return DoubleStream.generate(() -> Double.NaN).limit(ids.length);
+            }
+            return Arrays.stream(doubles);
+        }
+
+        /**
+         * @return the number of rows with a value
+         */
+        public int count() {
+            int count = 0;
+            for (int id : ids) {
+                if (id != NodeDictionary.NONE) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Select the rows with a given value
+         * @param value the node sought
+         * @return the matching rows
+         */
+        public BitSet selectEquals(Node value) {
+            final int sought = dictionary.lookup(value);
+            if (sought == NodeDictionary.NONE) {
+                return new BitSet();
+            }
+            return select(id -> id == sought);
+        }
+
+        /**
+         * Select the rows whose dictionary ID matches a predicate
+         * @param predicate tests the ID of each row
+         * @return the matching rows
+         */
+        public BitSet select(IntPredicate predicate) {
+            BitSet result = new BitSet(ids.length);
+            for (int row = 0; row < ids.length; row++) {
+                if (predicate.test(ids[row])) {
+                    result.set(row);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Select the rows with a numeric value in a range
+         * @param min the lowest value (inclusive)
+         * @param max the highest value (inclusive)
+         * @return the matching rows
+         */
+        public BitSet selectRange(double min, double max) {
+            BitSet result = new BitSet(ids.length);
+            if (doubles == null) {
+                return result;
+            }
+            for (int row = 0; row < doubles.length; row++) {
+                double value = doubles[row];
+                if (value >= min && value <= max) {
+                    result.set(row);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the number of distinct values in the column
+         */
+        public int countDistinct() {
+            BitSet seen = new BitSet(dictionary.size());
+            for (int id : ids) {
+                if (id != NodeDictionary.NONE) {
+                    seen.set(id);
+                }
+            }
+            return seen.cardinality();
+        }
+
+        /**
+         * @return the sum of the numeric values in the column
+         */
+        public double sum() {
+            return sum(null);
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the sum of the numeric values in the selected rows
+         */
+        public double sum(BitSet rows) {
+            double sum = 0;
+            if (doubles == null) {
+                return sum;
+            }
+            if (rows == null) {
+                for (double value : doubles) {
+                    if (!Double.isNaN(value)) {
+                        sum += value;
+                    }
+                }
+            }
+            else {
+                for (int row = rows.nextSetBit(0); row >= 0 && row < doubles.length; row = rows.nextSetBit(row + 1)) {
+                    if (!Double.isNaN(doubles[row])) {
+                        sum += doubles[row];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the sum of the integer values in the selected rows
+         * @throws IllegalStateException if the column does not have {@link #hasLongs() integer values}
+         */
+        public long sumLong(BitSet rows) {
+            if (longs == null) {
+                throw new IllegalStateException("Column '" + name + "' is not an integer column");
+            }
+            long sum = 0;
+            if (rows == null) {
+                for (long value : longs) {
+                    sum += value;
+                }
+            }
+            else {
+                for (int row = rows.nextSetBit(0); row >= 0 && row < longs.length; row = rows.nextSetBit(row + 1)) {
+                    sum += longs[row];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the number of numeric values in the selected rows
+         */
+        public int countNumeric(BitSet rows) {
+            int count = 0;
+            if (doubles == null) {
+                return count;
+            }
+            for (int row = 0; row < doubles.length; row++) {
+                if ((rows == null || rows.get(row)) && !Double.isNaN(doubles[row])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the smallest numeric value in the selected rows (or NaN if there are none)
+         */
+        public double min(BitSet rows) {
+            double min = Double.NaN;
+            if (doubles == null) {
+                return min;
+            }
+            for (int row = 0; row < doubles.length; row++) {
+                double value = doubles[row];
+                if ((rows == null || rows.get(row)) && !Double.isNaN(value) && (Double.isNaN(min) || value < min)) {
+                    min = value;
+                }
+            }
+            return min;
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the largest numeric value in the selected rows (or NaN if there are none)
+         */
+        public double max(BitSet rows) {
+            double max = Double.NaN;
+            if (doubles == null) {
+                return max;
+            }
+            for (int row = 0; row < doubles.length; row++) {
+                double value = doubles[row];
+                if ((rows == null || rows.get(row)) && !Double.isNaN(value) && (Double.isNaN(max) || value > max)) {
+                    max = value;
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @param rows the rows to include (null for all)
+         * @return the mean of the numeric values in the selected rows (or NaN if there are none)
+         */
+        public double average(BitSet rows) {
+            int count = countNumeric(rows);
+            return count == 0 ? Double.NaN : sum(rows) / count;
+        }
+    }
+}
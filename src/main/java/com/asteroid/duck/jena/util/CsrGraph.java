@@ -0,0 +1,395 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeDictionary;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only projection of the edges of some predicates (e.g. <code>test:child</code>) in a graph, in compressed
+ * sparse row form: nodes are dictionary encoded to dense int IDs and each node's neighbours are a range of an
+ * <code>int[]</code>. Walking it needs no index lookups or object allocation per hop, so repeated multi-hop
+ * traversals (hierarchies, reachability) run at array speed.
+ *
+ * Both directions are kept: {@link Direction#FORWARD} from subject to object and {@link Direction#REVERSE} from
+ * object to subject. Literal objects are ignored, and repeated edges (e.g. from two of the predicates) are kept once.
+ *
+ * A CSR graph is an immutable snapshot, safe to share between threads; see {@link AdjacencyIndex} for one that
+ * follows changes to the graph.
+ */
+public final class CsrGraph {
+    /** Returned by {@link #id(Node)} for a node not in the graph */
+    public static final int NONE = NodeDictionary.NONE;
+
+    /**
+     * The direction of the edges followed
+     */
+    public enum Direction {
+        /** From subject to object */
+        FORWARD,
+        /** From object to subject */
+        REVERSE
+    }
+
+    private final NodeDictionary dictionary;
+    private final int[] forwardOffsets;
+    private final int[] forwardTargets;
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+
+    private CsrGraph(NodeDictionary dictionary, int[] sources, int[] targets, int edges) {
+        this.dictionary = dictionary;
+        final int n = dictionary.size();
+        int[][] forward = compress(n, sources, targets, edges);
+        this.forwardOffsets = forward[0];
+        this.forwardTargets = forward[1];
+        int[][] reverse = compress(n, targets, sources, edges);
+        this.reverseOffsets = reverse[0];
+        this.reverseTargets = reverse[1];
+    }
+
+    /**
+     * Build a projection of the edges of some predicates
+     * @param graph the graph
+     * @param predicates the predicates whose triples are edges (at least one)
+     * @return the projection
+     */
+    public static CsrGraph build(Graph graph, Node... predicates) {
+        if (predicates.length == 0)
+            throw new IllegalArgumentException("At least one predicate is required");
+        NodeDictionary dictionary = new NodeDictionary();
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edges = 0;
+        for (Node predicate : predicates) {
+            ExtendedIterator<Triple> triples = graph.find(Node.ANY, predicate, Node.ANY);
+            try {
+                while (triples.hasNext()) {
+                    Triple triple = triples.next();
+                    if (triple.getObject().isLiteral()) {
+                        continue;
+                    }
+                    if (edges == sources.length) {
+                        sources = Arrays.copyOf(sources, edges << 1);
+                        targets = Arrays.copyOf(targets, edges << 1);
+                    }
+                    sources[edges] = dictionary.encode(triple.getSubject());
+                    targets[edges] = dictionary.encode(triple.getObject());
+                    edges++;
+                }
+            }
+            finally {
+                triples.close();
+            }
+        }
+        return new CsrGraph(dictionary, sources, targets, edges);
+    }
+
+    /**
+     * Build a projection of the edges of some properties
+     * @param model the model
+     * @param properties the properties whose statements are edges (at least one)
+     * @return the projection
+     */
+    public static CsrGraph build(Model model, Property... properties) {
+        Node[] predicates = new Node[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            predicates[i] = properties[i].asNode();
+        }
+        return build(model.getGraph(), predicates);
+    }
+
+    /**
+     * Counting sort the edges by source into offsets and targets, with each node's targets sorted and distinct
+     */
+    private static int[][] compress(int n, int[] sources, int[] targets, int edges) {
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < edges; i++) {
+            offsets[sources[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] sorted = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            sorted[next[sources[i]]++] = targets[i];
+        }
+        // sort and de-duplicate each node's range, compacting as we go
+        int write = 0;
+        int start = 0;
+        for (int node = 0; node < n; node++) {
+            int end = offsets[node + 1];
+            Arrays.sort(sorted, start, end);
+            offsets[node] = write;
+            for (int i = start; i < end; i++) {
+                if (i == start || sorted[i] != sorted[i - 1]) {
+                    sorted[write++] = sorted[i];
+                }
+            }
+            start = end;
+        }
+        offsets[n] = write;
+        return new int[][] { offsets, write == edges ? sorted : Arrays.copyOf(sorted, write) };
+    }
+
+    /**
+     * @return the number of nodes (IDs are 0 to this - 1)
+     */
+    public int nodeCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return the number of (distinct) edges
+     */
+    public int edgeCount() {
+        return forwardTargets.length;
+    }
+
+    /**
+     * @param node a node
+     * @return its ID, or {@link #NONE} if it is not in any edge
+     */
+    public int id(Node node) {
+        return dictionary.lookup(node);
+    }
+
+    /**
+     * @param id an ID
+     * @return the node
+     */
+    public Node node(int id) {
+        return dictionary.decode(id);
+    }
+
+    /**
+     * @param id a node ID
+     * @param direction the direction
+     * @return the number of neighbours
+     */
+    public int degree(int id, Direction direction) {
+        int[] offsets = offsets(direction);
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * @param id a node ID
+     * @param direction the direction
+     * @return the IDs of the neighbours (in ascending order)
+     */
+    public int[] neighbours(int id, Direction direction) {
+        int[] offsets = offsets(direction);
+        return Arrays.copyOfRange(targets(direction), offsets[id], offsets[id + 1]);
+    }
+
+    /**
+     * Visit the neighbours of a node without copying them
+     * @param id a node ID
+     * @param direction the direction
+     * @param action called with the ID of each neighbour
+     */
+    public void forEachNeighbour(int id, Direction direction, IntConsumer action) {
+        int[] offsets = offsets(direction);
+        int[] targets = targets(direction);
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    /**
+     * @param node a node
+     * @param direction the direction
+     * @return the neighbouring nodes (empty if the node is not in the graph)
+     */
+    public List<Node> neighbours(Node node, Direction direction) {
+        int id = id(node);
+        return id == NONE ? new ArrayList<>() : nodes(neighbours(id, direction));
+    }
+
+    /**
+     * Breadth first traversal
+     * @param from the ID to start from
+     * @param direction the direction
+     * @return the IDs visited, in order, starting with <code>from</code>
+     */
+    public int[] bfs(int from, Direction direction) {
+        int[] offsets = offsets(direction);
+        int[] targets = targets(direction);
+        BitSet visited = new BitSet(nodeCount());
+        int[] queue = new int[nodeCount()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited.set(from);
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                int target = targets[i];
+                if (!visited.get(target)) {
+                    visited.set(target);
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    /**
+     * Depth first (pre-order) traversal
+     * @param from the ID to start from
+     * @param direction the direction
+     * @return the IDs visited, in order, starting with <code>from</code>
+     */
+    public int[] dfs(int from, Direction direction) {
+        int[] offsets = offsets(direction);
+        int[] targets = targets(direction);
+        BitSet visited = new BitSet(nodeCount());
+        int[] order = new int[nodeCount()];
+        int count = 0;
+        // each node is pushed at most once per incoming edge
+        int[] stack = new int[Math.max(1, targets.length + 1)];
+        int top = 0;
+        stack[top++] = from;
+        while (top > 0) {
+            int node = stack[--top];
+            if (visited.get(node)) {
+                continue;
+            }
+            visited.set(node);
+            order[count++] = node;
+            // push in reverse so the lowest ID is visited first
+            for (int i = offsets[node + 1] - 1; i >= offsets[node]; i--) {
+                if (!visited.get(targets[i])) {
+                    stack[top++] = targets[i];
+                }
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * The nodes reachable by one or more hops (e.g. the descendants when {@link Direction#FORWARD} follows child
+     * links). The start node is included only if it is on a cycle.
+     * @param from the ID to start from
+     * @param direction the direction
+     * @return the IDs reachable
+     */
+    public BitSet reachable(int from, Direction direction) {
+        int[] offsets = offsets(direction);
+        int[] targets = targets(direction);
+        BitSet reached = new BitSet(nodeCount());
+        // the start is queued again if it is on a cycle
+        int[] queue = new int[nodeCount() + 1];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                int target = targets[i];
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @param from the ID to start from
+     * @param to the ID to look for
+     * @return true if <code>to</code> can be reached from <code>from</code> by one or more {@link Direction#FORWARD} hops
+     */
+    public boolean isReachable(int from, int to) {
+        BitSet visited = new BitSet(nodeCount());
+        int[] queue = new int[nodeCount()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = forwardOffsets[node]; i < forwardOffsets[node + 1]; i++) {
+                int target = forwardTargets[i];
+                if (target == to) {
+                    return true;
+                }
+                if (!visited.get(target)) {
+                    visited.set(target);
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param from a node
+     * @param to another node
+     * @return true if <code>to</code> can be reached from <code>from</code> by one or more {@link Direction#FORWARD} hops
+     */
+    public boolean isReachable(Node from, Node to) {
+        int fromId = id(from);
+        int toId = id(to);
+        return fromId != NONE && toId != NONE && isReachable(fromId, toId);
+    }
+
+    /**
+     * @param node a node
+     * @return the nodes reachable from it by one or more {@link Direction#FORWARD} hops
+     */
+    public List<Node> descendants(Node node) {
+        return reachableNodes(node, Direction.FORWARD);
+    }
+
+    /**
+     * @param node a node
+     * @return the nodes it can be reached from by one or more {@link Direction#FORWARD} hops
+     */
+    public List<Node> ancestors(Node node) {
+        return reachableNodes(node, Direction.REVERSE);
+    }
+
+    private List<Node> reachableNodes(Node node, Direction direction) {
+        int id = id(node);
+        if (id == NONE) {
+            return new ArrayList<>();
+        }
+        BitSet reached = reachable(id, direction);
+        List<Node> nodes = new ArrayList<>(reached.cardinality());
+        for (int i = reached.nextSetBit(0); i >= 0; i = reached.nextSetBit(i + 1)) {
+            nodes.add(node(i));
+        }
+        return nodes;
+    }
+
+    /**
+     * @param ids some IDs
+     * @return the nodes
+     */
+    public List<Node> nodes(int[] ids) {
+        List<Node> nodes = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            nodes.add(node(id));
+        }
+        return nodes;
+    }
+
+    int[] offsets(Direction direction) {
+        return direction == Direction.FORWARD ? forwardOffsets : reverseOffsets;
+    }
+
+    int[] targets(Direction direction) {
+        return direction == Direction.FORWARD ? forwardTargets : reverseTargets;
+    }
+}
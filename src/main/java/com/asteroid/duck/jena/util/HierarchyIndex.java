@@ -0,0 +1,340 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Interval labels for a hierarchy (a tree or other acyclic graph), so "is X under Y?" is answered without a
+ * traversal and "everything under Y" is a range scan.
+ *
+ * The index is built in one depth first pass over a {@link CsrGraph}: each node is numbered in post-order, and
+ * since a subtree finishes in consecutive numbers, the nodes under a node in the spanning tree are exactly those
+ * numbered in its interval <code>[first, post]</code>. A node with more than one parent (in a DAG) is only in
+ * the spanning tree under one of them, so the intervals of children are then also propagated to their parents
+ * (in post-order, i.e. reverse topological order), merging those that overlap or touch. For a tree every node has
+ * a single interval and the ancestor test is a pair of comparisons; otherwise it is a binary search of the
+ * node's intervals.
+ * <pre>
+ * HierarchyIndex hierarchy = HierarchyIndex.build(model, childProperty);
+ * hierarchy.isDescendant(x, y);   // is x under y?
+ * hierarchy.descendants(y);       // everything under y
+ * </pre>
+ * An index is an immutable snapshot; use {@link #watch(AdjacencyIndex, CsrGraph.Direction)} for one that is
+ * rebuilt when the graph changes.
+ */
+public final class HierarchyIndex {
+    /** DFS states */
+    private static final byte NEW = 0;
+    private static final byte ON_STACK = 1;
+    private static final byte DONE = 2;
+
+    private final CsrGraph graph;
+    /** the direction from child to parent */
+    private final CsrGraph.Direction up;
+    /** post-order number of each node ID */
+    private final int[] post;
+    /** node ID of each post-order number */
+    private final int[] byPost;
+    /** start of each node's intervals (by post-order number) in intervals */
+    private final int[] intervalOffsets;
+    /** pairs of inclusive post-order number ranges */
+    private final int[] intervals;
+
+    private HierarchyIndex(CsrGraph graph, CsrGraph.Direction up, int[] post, int[] byPost, int[] intervalOffsets, int[] intervals) {
+        this.graph = graph;
+        this.up = up;
+        this.post = post;
+        this.byPost = byPost;
+        this.intervalOffsets = intervalOffsets;
+        this.intervals = intervals;
+    }
+
+    /**
+     * Index a hierarchy whose edges point from parent to child (e.g. <code>test:child</code>)
+     * @param graph the graph
+     * @param predicate the predicate linking a parent to its child
+     * @return the index
+     * @throws IllegalArgumentException if the hierarchy has a cycle
+     */
+    public static HierarchyIndex build(Graph graph, Node predicate) {
+        return build(CsrGraph.build(graph, predicate), CsrGraph.Direction.FORWARD);
+    }
+
+    /**
+     * Index a hierarchy whose edges point from parent to child (e.g. <code>test:child</code>)
+     * @param model the model
+     * @param property the property linking a parent to its child
+     * @return the index
+     * @throws IllegalArgumentException if the hierarchy has a cycle
+     */
+    public static HierarchyIndex build(Model model, Property property) {
+        return build(CsrGraph.build(model, property), CsrGraph.Direction.FORWARD);
+    }
+
+    /**
+     * Index a hierarchy
+     * @param graph the projection of the hierarchy's edges
+     * @param down the direction from parent to child: {@link CsrGraph.Direction#FORWARD} for properties like
+     *             <code>test:child</code>, {@link CsrGraph.Direction#REVERSE} for properties like
+     *             <code>rdfs:subClassOf</code>
+     * @return the index
+     * @throws IllegalArgumentException if the hierarchy has a cycle
+     */
+    public static HierarchyIndex build(CsrGraph graph, CsrGraph.Direction down) {
+        final int n = graph.nodeCount();
+        final int[] offsets = graph.offsets(down);
+        final int[] targets = graph.targets(down);
+        final CsrGraph.Direction up = down == CsrGraph.Direction.FORWARD ? CsrGraph.Direction.REVERSE : CsrGraph.Direction.FORWARD;
+        final int[] parentOffsets = graph.offsets(up);
+
+        int[] post = new int[n];
+        int[] first = new int[n];
+        int[] byPost = new int[n];
+        byte[] state = new byte[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (parentOffsets[root + 1] != parentOffsets[root]) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            cursor[root] = offsets[root];
+            first[root] = count;
+            state[root] = ON_STACK;
+            while (top > 0) {
+                int node = stack[top - 1];
+                if (cursor[node] < offsets[node + 1]) {
+                    int child = targets[cursor[node]++];
+                    if (state[child] == ON_STACK) {
+                        throw new IllegalArgumentException("Hierarchy has a cycle through " + graph.node(child));
+                    }
+                    if (state[child] == NEW) {
+                        stack[top++] = child;
+                        cursor[child] = offsets[child];
+                        first[child] = count;
+                        state[child] = ON_STACK;
+                    }
+                } else {
+                    top--;
+                    state[node] = DONE;
+                    post[node] = count;
+                    byPost[count++] = node;
+                }
+            }
+        }
+        if (count < n) {
+            // every node of an acyclic graph is under some root
+            for (int i = 0; i < n; i++) {
+                if (state[i] == NEW)
+                    throw new IllegalArgumentException("Hierarchy has a cycle through " + graph.node(i));
+            }
+        }
+
+        // propagate intervals upwards: children are numbered before their parents
+        int[] intervalOffsets = new int[n + 1];
+        int[] intervals = new int[n * 2];
+        int size = 0;
+        int[] scratch = new int[16];
+        for (int p = 0; p < n; p++) {
+            int node = byPost[p];
+            int start = first[node];
+            int pairs = 0;
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                int child = post[targets[i]];
+                for (int j = intervalOffsets[child]; j < intervalOffsets[child + 1]; j += 2) {
+                    // those inside the spanning tree interval add nothing
+                    if (intervals[j] < start || intervals[j + 1] > p) {
+                        if (pairs * 2 + 2 > scratch.length) {
+                            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+                        }
+                        scratch[pairs * 2] = intervals[j];
+                        scratch[pairs * 2 + 1] = intervals[j + 1];
+                        pairs++;
+                    }
+                }
+            }
+            if (pairs * 2 + 2 > scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[pairs * 2] = start;
+            scratch[pairs * 2 + 1] = p;
+            pairs++;
+            int merged = merge(scratch, pairs);
+            if (size + merged * 2 > intervals.length) {
+                intervals = Arrays.copyOf(intervals, Math.max(intervals.length * 2, size + merged * 2));
+            }
+            System.arraycopy(scratch, 0, intervals, size, merged * 2);
+            intervalOffsets[p] = size;
+            size += merged * 2;
+            intervalOffsets[p + 1] = size;
+        }
+        return new HierarchyIndex(graph, up, post, byPost, intervalOffsets, Arrays.copyOf(intervals, size));
+    }
+
+    /**
+     * Sort pairs of inclusive ranges by start and merge those that overlap or touch
+     * @return the number of pairs left
+     */
+    private static int merge(int[] pairs, int count) {
+        if (count == 1) {
+            return 1;
+        }
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = ((long) pairs[i * 2] << 32) | (pairs[i * 2 + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int merged = 0;
+        for (long range : packed) {
+            int start = (int) (range >>> 32);
+            int end = (int) range;
+            if (merged > 0 && start <= pairs[merged * 2 - 1] + 1) {
+                pairs[merged * 2 - 1] = Math.max(pairs[merged * 2 - 1], end);
+            } else {
+                pairs[merged * 2] = start;
+                pairs[merged * 2 + 1] = end;
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * An index that follows an adjacency index, rebuilt (when next asked for) after the graph changes
+     * @param adjacency the projection of the hierarchy's edges
+     * @param down the direction from parent to child
+     * @return supplies the current index
+     */
+    public static Supplier<HierarchyIndex> watch(AdjacencyIndex adjacency, CsrGraph.Direction down) {
+        return adjacency.derived(graph -> build(graph, down));
+    }
+
+    /**
+     * @return the projection the index was built from
+     */
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @param node a node ID
+     * @param ancestor another node ID
+     * @return true if <code>node</code> is (strictly) under <code>ancestor</code>
+     */
+    public boolean isDescendant(int node, int ancestor) {
+        if (node == ancestor) {
+            return false;
+        }
+        int p = post[node];
+        int a = post[ancestor];
+        int lo = intervalOffsets[a];
+        int hi = intervalOffsets[a + 1];
+        if (hi - lo == 2) {
+            return p >= intervals[lo] && p <= intervals[lo + 1];
+        }
+        // binary search for the last interval starting at or before p
+        int pairs = (hi - lo) / 2;
+        int low = 0;
+        int high = pairs - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (intervals[lo + mid * 2] <= p) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && p <= intervals[lo + high * 2 + 1];
+    }
+
+    /**
+     * @param node a node
+     * @param ancestor another node
+     * @return true if <code>node</code> is (strictly) under <code>ancestor</code>
+     */
+    public boolean isDescendant(Node node, Node ancestor) {
+        int id = graph.id(node);
+        int ancestorId = graph.id(ancestor);
+        return id != CsrGraph.NONE && ancestorId != CsrGraph.NONE && isDescendant(id, ancestorId);
+    }
+
+    /**
+     * @param ancestor a node
+     * @param node another node
+     * @return true if <code>ancestor</code> is (strictly) above <code>node</code>
+     */
+    public boolean isAncestor(Node ancestor, Node node) {
+        return isDescendant(node, ancestor);
+    }
+
+    /**
+     * @param id a node ID
+     * @return the IDs of the nodes under it, in post-order
+     */
+    public IntStream descendantIds(int id) {
+        int p = post[id];
+        int lo = intervalOffsets[p];
+        int hi = intervalOffsets[p + 1];
+        return IntStream.range(0, (hi - lo) / 2)
+                .flatMap(i -> IntStream.rangeClosed(intervals[lo + i * 2], intervals[lo + i * 2 + 1]))
+                .filter(i -> i != p)
+                .map(i -> byPost[i]);
+    }
+
+    /**
+     * @param node a node
+     * @return the nodes under it (empty if it is not in the hierarchy)
+     */
+    public Stream<Node> descendants(Node node) {
+        int id = graph.id(node);
+        return id == CsrGraph.NONE ? Stream.empty() : descendantIds(id).mapToObj(graph::node);
+    }
+
+    /**
+     * @param node a node
+     * @return the number of nodes under it
+     */
+    public int descendantCount(Node node) {
+        int id = graph.id(node);
+        if (id == CsrGraph.NONE) {
+            return 0;
+        }
+        int p = post[id];
+        int count = -1;
+        for (int i = intervalOffsets[p]; i < intervalOffsets[p + 1]; i += 2) {
+            count += intervals[i + 1] - intervals[i] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return the nodes with no parent
+     */
+    public List<Node> roots() {
+        List<Node> roots = new ArrayList<>();
+        for (int node : byPost) {
+            if (graph.degree(node, up) == 0) {
+                roots.add(graph.node(node));
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * @return the total number of intervals (the number of nodes, for a tree)
+     */
+    public int intervalCount() {
+        return intervals.length / 2;
+    }
+}
@@ -0,0 +1,174 @@
+package com.asteroid.duck.jena.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded, thread safe pool for interning equal values (e.g. URI strings or {@link org.apache.jena.graph.Node}s)
+ * so that repeated values in large results share one instance.
+ *
+ * The pool is split into independently locked segments; each segment evicts its least recently used entry once it
+ * is full, so the pool never holds more than its maximum size. The maximum size is split evenly between the
+ * 16 segments, rounding down, so a pool may hold up to 15 fewer values than asked for. Hit, miss and eviction
+ * counts are kept so the size can be tuned.
+ *
+ * Instances are {@link UnaryOperator}s so they can be used directly in a stream: <code>.map(pool)</code>.
+ * @param <T> the type of value interned
+ */
+public class InternPool<T> implements UnaryOperator<T> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<T>[] segments;
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of values held (at least 16); each of the 16 segments holds
+     *                <code>maxSize / 16</code> values, rounded down
+     */
+    public InternPool(int maxSize) {
+        if (maxSize < SEGMENTS)
+            throw new IllegalArgumentException("Maximum size must be at least " + SEGMENTS);
+        this.maxSize = maxSize;
+        this.segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(maxSize / SEGMENTS, evictions);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Segment<T>[] newSegments(int count) {
+        return (Segment<T>[]) new Segment<?>[count];
+    }
+
+    /**
+     * Get the pooled instance equal to a value, adding the value if there is none.
+     * @param value the value (may be null)
+     * @return the pooled instance (or null if the value is null)
+     */
+    public T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        int h = value.hashCode();
+        Segment<T> segment = segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+        T existing;
+        synchronized (segment) {
+            existing = segment.putIfAbsent(value, value);
+        }
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+        misses.increment();
+        return value;
+    }
+
+    /**
+     * Same as {@link #intern(Object)}
+     */
+    @Override
+    public T apply(T value) {
+        return intern(value);
+    }
+
+    /**
+     * @return the number of values currently held
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the maximum number of values held, as given to the constructor (the segments between them hold at
+     * most this rounded down to a multiple of the number of segments)
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of calls to {@link #intern(Object)} that returned a pooled instance
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of calls to {@link #intern(Object)} that added a new value
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of values evicted to keep the pool within its maximum size
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the proportion of calls that returned a pooled instance (0 if there have been no calls)
+     */
+    public double hitRatio() {
+        long hit = hits();
+        long total = hit + misses();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    /**
+     * Remove all values and reset the statistics
+     */
+    public void clear() {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "InternPool[size=" + size() + "/" + maxSize + ", hits=" + hits() + ", misses=" + misses()
+                + ", evictions=" + evictions() + "]";
+    }
+
+    /**
+     * An access ordered map that drops its least recently used entry when full
+     */
+    private static class Segment<T> extends LinkedHashMap<T, T> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final LongAdder evictions;
+
+        private Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<T, T> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
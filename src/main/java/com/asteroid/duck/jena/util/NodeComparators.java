@@ -0,0 +1,112 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeNumbers;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.util.NodeUtils;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * {@link Comparator}s over {@link Node} values, and adapters to compare rows, statements and RDF nodes by them.
+ * Unbound (null) values always sort first.
+ */
+public class NodeComparators {
+
+    /**
+     * Order by numeric value, parsed from the literal lexical form. Values that are not numbers sort before all
+     * numbers (and are otherwise ordered by {@link #rdfTerms()}).
+     * @return the comparator
+     */
+    public static Comparator<Node> numeric() {
+        return Comparator.nullsFirst((a, b) -> {
+            double aValue = NodeNumbers.toDouble(a, Double.NaN);
+            double bValue = NodeNumbers.toDouble(b, Double.NaN);
+            boolean aNumeric = isNumber(aValue, a);
+            boolean bNumeric = isNumber(bValue, b);
+            if (aNumeric && bNumeric) {
+                return Double.compare(aValue, bValue);
+            }
+            if (aNumeric != bNumeric) {
+                return aNumeric ? 1 : -1;
+            }
+            return NodeUtils.compareRDFTerms(a, b);
+        });
+    }
+
+    /**
+     * @param value the value read by {@link NodeNumbers#toDouble(Node, double)}, NaN if not a number
+     * @param node the node it was read from
+     * @return true if the node is a number (only checked again for NaN, which may be <code>"NaN"^^xsd:double</code>)
+     */
+    private static boolean isNumber(double value, Node node) {
+        return !Double.isNaN(value) || NodeNumbers.isNumeric(node);
+    }
+
+    /**
+     * Order by lexical form (URI, literal lexical form or blank node label)
+     * @return the comparator
+     */
+    public static Comparator<Node> lexical() {
+        return Comparator.nullsFirst(Comparator.comparing(NodeComparators::lexicalForm));
+    }
+
+    /**
+     * The total ordering of RDF terms used by Jena ({@link NodeUtils#compareRDFTerms(Node, Node)})
+     * @return the comparator
+     */
+    public static Comparator<Node> rdfTerms() {
+        return Comparator.nullsFirst(NodeUtils::compareRDFTerms);
+    }
+
+    /**
+     * Compare rows by the value of a variable
+     * @param variable the variable
+     * @param order the order for the values
+     * @return a comparator of rows
+     */
+    public static Comparator<Binding> byVariable(String variable, Comparator<Node> order) {
+        final Var var = Var.alloc(variable);
+        return Comparator.comparing(binding -> binding.get(var), order);
+    }
+
+    /**
+     * Compare statements by their object
+     * @param order the order for the objects
+     * @return a comparator of statements
+     */
+    public static Comparator<Statement> byObject(Comparator<Node> order) {
+        return Comparator.comparing(statement -> statement.getObject().asNode(), order);
+    }
+
+    /**
+     * Compare RDF nodes (e.g. from {@link ResultStream#streamLiteral}) by their graph node
+     * @param order the order for the nodes
+     * @param <T> the type of RDF node
+     * @return a comparator of RDF nodes
+     */
+    public static <T extends RDFNode> Comparator<T> byNode(Comparator<Node> order) {
+        return Comparator.comparing(asNode(), Comparator.nullsFirst(order));
+    }
+
+    private static <T extends RDFNode> Function<T, Node> asNode() {
+        return rdfNode -> rdfNode == null ? null : rdfNode.asNode();
+    }
+
+    private static String lexicalForm(Node node) {
+        if (node.isURI()) {
+            return node.getURI();
+        }
+        if (node.isLiteral()) {
+            return node.getLiteralLexicalForm();
+        }
+        if (node.isBlank()) {
+            return node.getBlankNodeLabel();
+        }
+        return node.toString();
+    }
+}
@@ -0,0 +1,443 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeCodec;
+import com.asteroid.duck.jena.util.impl.NodeFingerprint;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A set of nodes (or tuples of nodes) for de-duplicating very large streams, an alternative to
+ * {@link Stream#distinct()} which keeps every (heavy) Jena object in an on-heap {@link java.util.HashSet}.
+ *
+ * Each node is reduced to a 64-bit {@link NodeFingerprint fingerprint} held in an open addressing (linear probing)
+ * hash table in direct (off-heap) buffers, costing 8 bytes per slot, so tens of millions of distinct values use
+ * a few hundred MB outside the Java heap and nothing on it.
+ *
+ * <ul>
+ *     <li>{@link #approximate(long)}: fingerprints only. Two different nodes with the same fingerprint are treated
+ *     as duplicates, so a value may (very rarely) be wrongly dropped: about n<sup>2</sup>/2<sup>65</sup> chance
+ *     over n distinct values.</li>
+ *     <li>{@link #exact(long, Path)}: each slot also holds the offset of the encoded value in an append-only
+ *     dictionary file, which is read to confirm a fingerprint match. This costs 16 bytes per slot plus a read of
+ *     the dictionary for each repeated value (in bulk into a buffer, which often already holds it), but is never
+ *     wrong.</li>
+ * </ul>
+ *
+ * The set is thread safe (the {@code add} methods are synchronized), so it can filter a parallel stream; but in
+ * that case which of several duplicates is kept is not defined. Close the set to release the dictionary file;
+ * the buffers are released when it is garbage collected.
+ */
+public class NodeDistinct implements AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(NodeDistinct.class);
+
+    /** Slots per buffer segment (each segment is at most 256MB) */
+    private static final int SEGMENT_BITS = 24;
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SLOTS - 1;
+    /** The largest table, in slots */
+    private static final long MAX_SLOTS = 1L << 40;
+    /** Grow the table when it is this full */
+    private static final double LOAD_FACTOR = 0.6;
+    /** Fingerprint marking an empty slot; a real fingerprint of 0 is stored as {@link #ZERO} */
+    private static final long EMPTY = 0;
+    private static final long ZERO = 1;
+    /** Size of the pending dictionary bytes written out in one go */
+    private static final int DICTIONARY_BUFFER = 1 << 16;
+    /** Bytes of the dictionary file read at once to confirm a match */
+    private static final int READ_BUFFER = 4096;
+
+    private final int slotBytes;
+    private ByteBuffer[] segments;
+    private long slots;
+    private long mask;
+    private long size = 0;
+    private long collisions = 0;
+
+    // exact mode only
+    private final Path dictionaryFile;
+    private final RandomAccessFile dictionary;
+    private final PendingBytes pending;
+    private final DataOutputStream pendingOut;
+    private long flushed = 0;
+    /** Bytes of the (append only) dictionary file, read from {@link #readStart} */
+    private ByteBuffer read;
+    private long readStart = 0;
+
+    private NodeDistinct(long expected, Path dictionaryFile) throws IOException {
+        this.slotBytes = dictionaryFile == null ? 8 : 16;
+        this.dictionaryFile = dictionaryFile;
+        if (dictionaryFile != null) {
+            this.dictionary = new RandomAccessFile(dictionaryFile.toFile(), "rw");
+            this.pending = new PendingBytes();
+            this.pendingOut = new DataOutputStream(pending);
+            this.read = ByteBuffer.allocate(READ_BUFFER);
+            read.limit(0);
+        }
+        else {
+            this.dictionary = null;
+            this.pending = null;
+            this.pendingOut = null;
+        }
+        allocate(tableSize(expected));
+    }
+
+    /**
+     * Create a set that compares fingerprints only
+     * @param expected the expected number of distinct values (the table grows if needed)
+     * @return a new set
+     */
+    public static NodeDistinct approximate(long expected) {
+        try {
+            return new NodeDistinct(expected, null);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create a set that confirms fingerprint matches against a dictionary file of the values
+     * @param expected the expected number of distinct values (the table grows if needed)
+     * @param directory where to create the dictionary file, or null for the default temporary directory
+     * @return a new set
+     * @throws UncheckedIOException if the dictionary file cannot be created
+     */
+    public static NodeDistinct exact(long expected, Path directory) {
+        try {
+            Path file = directory == null ? Files.createTempFile("distinct", ".dict") : Files.createTempFile(directory, "distinct", ".dict");
+            return new NodeDistinct(expected, file);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Filter a stream to its distinct values by fingerprint, see {@link #approximate(long)}
+     * @param stream the stream
+     * @param key the node identifying each element
+     * @param <T> the element type
+     * @return the filtered stream (closing it releases the set)
+     */
+    public static <T> Stream<T> distinct(Stream<T> stream, Function<? super T, Node> key) {
+        return filter(stream, approximate(1024), element -> new Node[] { key.apply(element) });
+    }
+
+    /**
+     * Filter a stream of RDF nodes (e.g. from {@link ResultStream#streamResources}) to its distinct values by
+     * fingerprint, see {@link #approximate(long)}
+     * @param stream the stream
+     * @param <T> the type of node
+     * @return the filtered stream (closing it releases the set)
+     */
+    public static <T extends RDFNode> Stream<T> distinct(Stream<T> stream) {
+        return distinct(stream, RDFNode::asNode);
+    }
+
+    /**
+     * Filter a stream to its distinct values exactly, see {@link #exact(long, Path)}
+     * @param stream the stream
+     * @param key the node identifying each element
+     * @param directory where to create the dictionary file, or null for the default temporary directory
+     * @param <T> the element type
+     * @return the filtered stream (closing it deletes the dictionary)
+     */
+    public static <T> Stream<T> distinctExact(Stream<T> stream, Function<? super T, Node> key, Path directory) {
+        return filter(stream, exact(1024, directory), element -> new Node[] { key.apply(element) });
+    }
+
+    /**
+     * Filter a stream of statements to the distinct triples by fingerprint, see {@link #approximate(long)}
+     * @param stream the statements
+     * @return the filtered stream (closing it releases the set)
+     */
+    public static Stream<Statement> distinctStatements(Stream<Statement> stream) {
+        return filter(stream, approximate(1024), NodeDistinct::nodes);
+    }
+
+    /**
+     * Filter a stream of statements to the distinct triples exactly, see {@link #exact(long, Path)}
+     * @param stream the statements
+     * @param directory where to create the dictionary file, or null for the default temporary directory
+     * @return the filtered stream (closing it deletes the dictionary)
+     */
+    public static Stream<Statement> distinctStatementsExact(Stream<Statement> stream, Path directory) {
+        return filter(stream, exact(1024, directory), NodeDistinct::nodes);
+    }
+
+    private static <T> Stream<T> filter(Stream<T> stream, NodeDistinct set, Function<? super T, Node[]> key) {
+        return stream.filter(element -> set.add(key.apply(element))).onClose(set::close);
+    }
+
+    private static Node[] nodes(Statement statement) {
+        return new Node[] { statement.getSubject().asNode(), statement.getPredicate().asNode(), statement.getObject().asNode() };
+    }
+
+    /**
+     * Add a node
+     * @param node the node (may be null)
+     * @return true if it was not already in the set
+     */
+    public boolean add(Node node) {
+        return add(new Node[] { node });
+    }
+
+    /**
+     * Add a tuple of nodes (tuples are equal when all their nodes are equal, in order)
+     * @param nodes the nodes (any may be null)
+     * @return true if the tuple was not already in the set
+     * @throws UncheckedIOException if the dictionary cannot be read or written
+     */
+    public synchronized boolean add(Node... nodes) {
+        if (segments == null)
+            throw new IllegalStateException("Set is closed");
+        long fingerprint = NodeFingerprint.of(nodes);
+        if (fingerprint == EMPTY) {
+            fingerprint = ZERO;
+        }
+        long slot = fingerprint & mask;
+        while (true) {
+            long existing = fingerprintAt(slot);
+            if (existing == EMPTY) {
+                break;
+            }
+            if (existing == fingerprint) {
+                if (dictionary == null || matches(offsetAt(slot), nodes)) {
+                    return false;
+                }
+                collisions++;
+            }
+            slot = (slot + 1) & mask;
+        }
+        store(slot, fingerprint, dictionary == null ? 0 : append(nodes));
+        if (++size > slots * LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of distinct values added
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return in exact mode, the number of times different values were found to share a fingerprint
+     */
+    public synchronized long collisions() {
+        return collisions;
+    }
+
+    /**
+     * @return true if this set confirms matches against the dictionary
+     */
+    public boolean isExact() {
+        return dictionary != null;
+    }
+
+    /**
+     * @return the off-heap memory used by the table in bytes
+     */
+    public synchronized long tableBytes() {
+        return slots * slotBytes;
+    }
+
+    /**
+     * Release the table and delete the dictionary file
+     */
+    @Override
+    public synchronized void close() {
+        segments = null;
+        if (dictionary != null) {
+            try {
+                dictionary.close();
+                Files.deleteIfExists(dictionaryFile);
+            }
+            catch(IOException e) {
+                LOG.warn("Unable to delete " + dictionaryFile, e);
+                dictionaryFile.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private static long tableSize(long expected) {
+        long needed = Math.max(16, (long) (Math.max(expected, 1) / LOAD_FACTOR) + 1);
+        long size = Long.highestOneBit(needed);
+        return size < needed ? size << 1 : size;
+    }
+
+    private void allocate(long slots) {
+        if (slots > MAX_SLOTS)
+            throw new IllegalStateException("Too many distinct values: " + size);
+        int count = (int) ((slots + SEGMENT_SLOTS - 1) >>> SEGMENT_BITS);
+        int segmentSlots = (int) Math.min(slots, SEGMENT_SLOTS);
+        this.segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            // direct buffers are zeroed, i.e. every slot starts EMPTY
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * slotBytes);
+        }
+        this.slots = slots;
+        this.mask = slots - 1;
+    }
+
+    private void grow() {
+        ByteBuffer[] old = segments;
+        long oldSlots = slots;
+        allocate(slots << 1);
+        for (long i = 0; i < oldSlots; i++) {
+            ByteBuffer segment = old[(int) (i >>> SEGMENT_BITS)];
+            int position = (int) (i & SEGMENT_MASK) * slotBytes;
+            long fingerprint = segment.getLong(position);
+            if (fingerprint != EMPTY) {
+                long slot = fingerprint & mask;
+                while (fingerprintAt(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                store(slot, fingerprint, slotBytes == 16 ? segment.getLong(position + 8) : 0);
+            }
+        }
+        LOG.debug("Grew distinct table to " + slots + " slots for " + size + " values");
+    }
+
+    private long fingerprintAt(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) * slotBytes);
+    }
+
+    private long offsetAt(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) * slotBytes + 8);
+    }
+
+    private void store(long slot, long fingerprint, long offset) {
+        ByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+        int position = (int) (slot & SEGMENT_MASK) * slotBytes;
+        segment.putLong(position, fingerprint);
+        if (slotBytes == 16) {
+            segment.putLong(position + 8, offset);
+        }
+    }
+
+    /**
+     * Append a tuple to the dictionary
+     * @return its offset
+     */
+    private long append(Node[] nodes) {
+        try {
+            long offset = flushed + pending.size();
+            pendingOut.writeByte(nodes.length);
+            for (Node node : nodes) {
+                NodeCodec.write(pendingOut, node);
+            }
+            if (pending.size() >= DICTIONARY_BUFFER) {
+                dictionary.seek(flushed);
+                dictionary.write(pending.buffer(), 0, pending.size());
+                flushed += pending.size();
+                pending.reset();
+            }
+            return offset;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compare a tuple with the one in the dictionary at an offset
+     */
+    private boolean matches(long offset, Node[] nodes) {
+        try {
+            Node[] stored;
+            if (offset >= flushed) {
+                ByteBuffer in = ByteBuffer.wrap(pending.buffer(), (int) (offset - flushed), pending.size() - (int) (offset - flushed));
+                stored = new Node[in.get()];
+                for (int i = 0; i < stored.length; i++) {
+                    stored[i] = NodeCodec.read(in);
+                }
+            }
+            else {
+                stored = readFlushed(offset);
+            }
+            return Arrays.equals(stored, nodes);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode a tuple from the flushed part of the dictionary. The bytes are read from the file in bulk into a heap
+     * buffer (which often already holds them), growing it if a tuple does not fit.
+     */
+    private Node[] readFlushed(long offset) throws IOException {
+        while (true) {
+            if (offset < readStart || offset >= readStart + read.limit()) {
+                fill(offset);
+            }
+            ByteBuffer in = read.duplicate();
+            in.position((int) (offset - readStart));
+            try {
+                Node[] stored = new Node[in.get()];
+                for (int i = 0; i < stored.length; i++) {
+                    stored[i] = NodeCodec.read(in);
+                }
+                return stored;
+            }
+            catch(BufferUnderflowException e) {
+                // the tuple runs past the bytes read
+                if (readStart + read.limit() >= flushed) {
+                    throw new IOException("Truncated dictionary entry at " + offset);
+                }
+                if (offset == readStart) {
+                    read = ByteBuffer.allocate(read.capacity() * 2);
+                }
+                fill(offset);
+            }
+        }
+    }
+
+    /**
+     * Read the flushed dictionary bytes from an offset into the read buffer, in one positional read if possible
+     */
+    private void fill(long offset) throws IOException {
+        read.clear();
+        read.limit((int) Math.min(read.capacity(), flushed - offset));
+        while (read.hasRemaining()) {
+            if (dictionary.getChannel().read(read, offset + read.position()) < 0) {
+                throw new IOException("Unexpected end of dictionary at " + (offset + read.position()));
+            }
+        }
+        read.flip();
+        readStart = offset;
+    }
+
+    /**
+     * Dictionary bytes not yet written to the file (readable in place)
+     */
+    private static class PendingBytes extends ByteArrayOutputStream {
+        private PendingBytes() {
+            super(DICTIONARY_BUFFER + 1024);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.asteroid.duck.jena.util;
+
+/**
+ * Thrown by the numeric streams of {@link ResultStream} using {@link NumericPolicy#FAIL}
+ * when a value is unbound or is not a numeric literal.
+ */
+public class NonNumericValueException extends RuntimeException {
+    public NonNumericValueException(String message) {
+        super(message);
+    }
+
+    public NonNumericValueException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
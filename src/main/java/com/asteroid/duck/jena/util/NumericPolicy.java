@@ -0,0 +1,14 @@
+package com.asteroid.duck.jena.util;
+
+/**
+ * What to do when a value in a numeric result stream (e.g. {@link ResultStream#streamDoubles}) is
+ * unbound or not a numeric literal.
+ */
+public enum NumericPolicy {
+    /** Leave the row out of the stream */
+    SKIP,
+    /** Use a default value in place of the row value */
+    DEFAULT,
+    /** Throw a {@link NonNumericValueException} */
+    FAIL
+}
@@ -0,0 +1,152 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.txn.JenaTransaction;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Full graph scans split across cores. A stream from a single {@link org.apache.jena.rdf.model.StmtIterator} is
+ * read by one thread however it is split, so instead the distinct subjects are listed once, divided into
+ * disjoint partitions, and each partition scanned independently with
+ * <code>graph.find(subject, ANY, ANY)</code> for each of its subjects. Every triple is in exactly one partition.
+ *
+ * <pre>
+ * Map&lt;Node, Long&gt; predicateCounts = PartitionedScan.scan(graph, 8,
+ *         triples -&gt; triples.collect(Collectors.groupingBy(Triple::getPredicate, Collectors.counting())),
+ *         (a, b) -&gt; { b.forEach((k, v) -&gt; a.merge(k, v, Long::sum)); return a; });
+ * </pre>
+ */
+public class PartitionedScan {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedScan.class);
+
+    /**
+     * Divide the distinct subjects of a graph into partitions of (nearly) equal numbers of subjects
+     * @param graph the graph
+     * @param partitions the number of partitions wanted
+     * @return the partitions (fewer than asked for if there are fewer subjects)
+     */
+    public static List<List<Node>> partitions(Graph graph, int partitions) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("Partitions must be at least 1");
+        List<Node> subjects = GraphUtil.listSubjects(graph, Node.ANY, Node.ANY).toList();
+        int count = Math.min(partitions, subjects.size());
+        List<List<Node>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(subjects.subList((int) ((long) subjects.size() * i / count), (int) ((long) subjects.size() * (i + 1) / count)));
+        }
+        return result;
+    }
+
+    /**
+     * A parallel stream of all the triples in a graph, split by subject rather than read from one iterator
+     * @param graph the graph
+     * @return a parallel stream of triples
+     */
+    public static Stream<Triple> stream(Graph graph) {
+        return GraphUtil.listSubjects(graph, Node.ANY, Node.ANY).toList().parallelStream()
+                .flatMap(subject -> TripleStream.fromSeq(graph.find(subject, Node.ANY, Node.ANY)));
+    }
+
+    /**
+     * Scan a graph in partitions on the common fork-join pool and merge the results
+     * @param graph the graph
+     * @param partitions the number of partitions (e.g. the number of cores)
+     * @param task computes a result from the triples of one partition (called concurrently)
+     * @param merge combines two results (called on the calling thread, in partition order)
+     * @param <R> the type of result
+     * @return the merged result, or null if the graph is empty
+     */
+    public static <R> R scan(Graph graph, int partitions, Function<Stream<Triple>, R> task, BinaryOperator<R> merge) {
+        return scan(graph, partitions, ForkJoinPool.commonPool(), task, merge);
+    }
+
+    /**
+     * Scan a graph in partitions and merge the results
+     * @param graph the graph
+     * @param partitions the number of partitions (e.g. the number of cores)
+     * @param executor runs the partition tasks
+     * @param task computes a result from the triples of one partition (called concurrently)
+     * @param merge combines two results (called on the calling thread, in partition order)
+     * @param <R> the type of result
+     * @return the merged result, or null if the graph is empty
+     */
+    public static <R> R scan(Graph graph, int partitions, Executor executor, Function<Stream<Triple>, R> task, BinaryOperator<R> merge) {
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for (List<Node> partition : partitions(graph, partitions)) {
+            futures.add(CompletableFuture.supplyAsync(() -> scanPartition(graph, partition, task), executor));
+        }
+        return merge(futures, merge);
+    }
+
+    /**
+     * Scan the default graph of a (transactional) dataset in partitions and merge the results.
+     *
+     * The subjects are listed in a {@link org.apache.jena.query.ReadWrite#READ} transaction on the calling thread,
+     * and each partition is scanned in its own READ transaction on its worker thread, since Jena transactions
+     * belong to a single thread. If a write commits while the scan runs, partitions may see different versions
+     * of the data.
+     * @param dataset the dataset
+     * @param partitions the number of partitions (e.g. the number of cores)
+     * @param executor runs the partition tasks
+     * @param task computes a result from the triples of one partition (called concurrently)
+     * @param merge combines two results (called on the calling thread, in partition order)
+     * @param <R> the type of result
+     * @return the merged result, or null if the graph is empty
+     */
+    public static <R> R scan(Dataset dataset, int partitions, Executor executor, Function<Stream<Triple>, R> task, BinaryOperator<R> merge) {
+        List<List<Node>> subjects = JenaTransaction.readWith(() -> partitions(dataset.getDefaultModel().getGraph(), partitions), dataset);
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for (List<Node> partition : subjects) {
+            futures.add(CompletableFuture.supplyAsync(() -> JenaTransaction.readWith(
+                    () -> scanPartition(dataset.getDefaultModel().getGraph(), partition, task), dataset), executor));
+        }
+        return merge(futures, merge);
+    }
+
+    private static <R> R scanPartition(Graph graph, List<Node> subjects, Function<Stream<Triple>, R> task) {
+        try (Stream<Triple> triples = subjects.stream()
+                .flatMap(subject -> TripleStream.fromSeq(graph.find(subject, Node.ANY, Node.ANY)))) {
+            return task.apply(triples);
+        }
+    }
+
+    private static <R> R merge(List<CompletableFuture<R>> futures, BinaryOperator<R> merge) {
+        LOG.debug("Scanning " + futures.size() + " partitions");
+        try {
+            R result = null;
+            for (CompletableFuture<R> future : futures) {
+                R partial = future.join();
+                result = result == null ? partial : merge.apply(result, partial);
+            }
+            return result;
+        }
+        catch(CompletionException e) {
+            for (CompletableFuture<R> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
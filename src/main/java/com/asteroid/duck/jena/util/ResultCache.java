@@ -0,0 +1,365 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeCodec;
+import com.asteroid.duck.jena.util.txn.JenaTransaction;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.ResultBinding;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A cache of SELECT query results for datasets that change much less often than they are queried.
+ *
+ * Results are keyed by the normalized (parsed and re-serialized) query text together with the identity of the
+ * dataset's {@link DatasetGraph} (so any {@link Dataset} wrapping the same storage shares the results) and its
+ * generation. The generation of a dataset moves on (and its entries are dropped) whenever a
+ * {@link org.apache.jena.query.ReadWrite#WRITE} {@link JenaTransaction} on it commits, or when
+ * {@link #invalidate(Dataset)} is called for changes made by other means.
+ *
+ * Results are held compactly as encoded bytes (see {@link NodeCodec}) and evicted least recently used first to
+ * keep within a byte budget. Each lookup returns a new {@link ResultSetRewindable} that decodes rows as it is read,
+ * so it can be used with any of the {@link ResultStream} methods.
+ *
+ * Queries are executed on the calling thread, so any transaction needed to read the dataset is the caller's
+ * responsibility. {@link #close()} the cache to stop listening for commits.
+ */
+public class ResultCache implements AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(ResultCache.class);
+    /** A rough allowance for the objects around each entry */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<DatasetGraph, DatasetState> datasets = new WeakHashMap<>();
+    private final AtomicLong datasetIds = new AtomicLong();
+    private final Consumer<Dataset> commitListener = this::invalidate;
+    private long bytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Create a cache and start listening for {@link JenaTransaction} commits
+     * @param maxBytes the (approximate) maximum size of cached results
+     */
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        JenaTransaction.addCommitListener(commitListener);
+    }
+
+    /**
+     * Get the results of a SELECT query, executing it only if there are no current cached results
+     * @param queryString the SPARQL query
+     * @param dataset the dataset to query
+     * @return the results
+     */
+    public ResultSetRewindable select(String queryString, Dataset dataset) {
+        return select(QueryFactory.create(queryString), dataset);
+    }
+
+    /**
+     * Get the results of a SELECT query, executing it only if there are no current cached results
+     * @param query the query
+     * @param dataset the dataset to query
+     * @return the results
+     */
+    public ResultSetRewindable select(Query query, Dataset dataset) {
+        if (JenaTransaction.isWriting(dataset)) {
+            // uncommitted changes may yet be aborted (and are not seen by cached results)
+            misses.increment();
+            try (QueryExecution execution = QueryExecutionFactory.create(query, dataset)) {
+                return new CachedResultSet(encode(execution.execSelect()), dataset.getDefaultModel());
+            }
+        }
+        String text = query.serialize();
+        Key key;
+        synchronized (this) {
+            key = new Key(state(dataset), text);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return new CachedResultSet(entry, dataset.getDefaultModel());
+            }
+        }
+        misses.increment();
+        Entry entry;
+        try (QueryExecution execution = QueryExecutionFactory.create(query, dataset)) {
+            entry = encode(execution.execSelect());
+        }
+        synchronized (this) {
+            // only keep the results if the dataset has not changed since we started
+            if (key.generation == state(dataset).generation && entry.size() <= maxBytes) {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) {
+                    bytes -= previous.size();
+                }
+                bytes += entry.size();
+                evict();
+            }
+        }
+        return new CachedResultSet(entry, dataset.getDefaultModel());
+    }
+
+    /**
+     * Drop all cached results for a dataset (e.g. after it has been changed outside a {@link JenaTransaction})
+     * @param dataset the dataset that has changed
+     */
+    public synchronized void invalidate(Dataset dataset) {
+        DatasetState state = datasets.get(dataset.asDatasetGraph());
+        if (state != null) {
+            state.generation++;
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> next = iterator.next();
+                if (next.getKey().datasetId == state.id) {
+                    bytes -= next.getValue().size();
+                    iterator.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all cached results
+     */
+    public synchronized void clear() {
+        invalidations.add(entries.size());
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that executed the query
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the proportion of lookups answered from the cache (0 if there have been none)
+     */
+    public double hitRatio() {
+        long hit = hits();
+        long total = hit + misses();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    /**
+     * @return the number of results evicted to stay within the byte budget
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of results dropped because their dataset changed
+     */
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the approximate size of the cached results in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Stop listening for commits and drop all cached results
+     */
+    @Override
+    public void close() {
+        JenaTransaction.removeCommitListener(commitListener);
+        clear();
+    }
+
+    private DatasetState state(Dataset dataset) {
+        return datasets.computeIfAbsent(dataset.asDatasetGraph(), d -> new DatasetState(datasetIds.incrementAndGet()));
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().size();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static Entry encode(ResultSet resultSet) {
+        List<String> resultVars = new ArrayList<>(resultSet.getResultVars());
+        Var[] vars = ResultStream.vars(resultVars);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int rows = 0;
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            while (resultSet.hasNext()) {
+                NodeCodec.writeRow(out, resultSet.nextBinding(), vars);
+                rows++;
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LOG.debug("Cached " + rows + " rows in " + bytes.size() + " bytes");
+        return new Entry(Collections.unmodifiableList(resultVars), vars, rows, bytes.toByteArray());
+    }
+
+    /**
+     * The identity and current generation of a dataset
+     */
+    private static class DatasetState {
+        private final long id;
+        private long generation = 0;
+
+        private DatasetState(long id) {
+            this.id = id;
+        }
+    }
+
+    private static class Key {
+        private final long datasetId;
+        private final long generation;
+        private final String query;
+
+        private Key(DatasetState state, String query) {
+            this.datasetId = state.id;
+            this.generation = state.generation;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return datasetId == key.datasetId && generation == key.generation && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(datasetId, generation, query);
+        }
+    }
+
+    /**
+     * Cached results
+     */
+    private static class Entry {
+        private final List<String> resultVars;
+        private final Var[] vars;
+        private final int rows;
+        private final byte[] data;
+
+        private Entry(List<String> resultVars, Var[] vars, int rows, byte[] data) {
+            this.resultVars = resultVars;
+            this.vars = vars;
+            this.rows = rows;
+            this.data = data;
+        }
+
+        private long size() {
+            return data.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Decodes cached results as they are read
+     */
+    private static class CachedResultSet implements ResultSetRewindable {
+        private final Entry entry;
+        private final Model model;
+        private DataInputStream in;
+        private int row;
+
+        private CachedResultSet(Entry entry, Model model) {
+            this.entry = entry;
+            this.model = model;
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            in = new DataInputStream(new ByteArrayInputStream(entry.data));
+            row = 0;
+        }
+
+        @Override
+        public int size() {
+            return entry.rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return row < entry.rows;
+        }
+
+        @Override
+        public QuerySolution next() {
+            return nextSolution();
+        }
+
+        @Override
+        public QuerySolution nextSolution() {
+            return new ResultBinding(model, nextBinding());
+        }
+
+        @Override
+        public Binding nextBinding() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Binding binding = NodeCodec.readRow(in, entry.vars);
+                row++;
+                return binding;
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int getRowNumber() {
+            return row;
+        }
+
+        @Override
+        public List<String> getResultVars() {
+            return entry.resultVars;
+        }
+
+        @Override
+        public Model getResourceModel() {
+            return model;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.*;
+
+/**
+ * A flyweight, forward only cursor over a {@link ResultSet} - similar in spirit to a JDBC
+ * {@link java.sql.ResultSet}. The cursor is itself the current {@link ResultRow}; calling {@link #next()}
+ * advances it in place so scanning a result creates no garbage per row beyond the {@link Binding}
+ * the result set produces anyway.
+ *
+ * <pre>
+ * ResultCursor cursor = ResultStream.cursor(resultSet);
+ * while (cursor.next()) {
+ *     String uri = cursor.getURI(0);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Use {@link #copy()} to keep hold of a row after the cursor moves on.
+ */
+public class ResultCursor implements ResultRow {
+    private final ResultSet resultSet;
+    private final Columns columns;
+    private Binding current;
+    private long rowNumber = 0;
+
+    /**
+     * Create a cursor positioned before the first row of the result set
+     * @param resultSet the result set to read
+     */
+    public ResultCursor(ResultSet resultSet) {
+        this.resultSet = Objects.requireNonNull(resultSet);
+        this.columns = new Columns(resultSet.getResultVars());
+    }
+
+    /**
+     * Advance to the next row
+     * @return true if the cursor is now on a row, false if there are no more rows
+     */
+    public boolean next() {
+        if (resultSet.hasNext()) {
+            current = resultSet.nextBinding();
+            rowNumber++;
+            return true;
+        }
+        current = null;
+        return false;
+    }
+
+    /**
+     * @return the number of the current row (1 based), or 0 before the first call to {@link #next()}
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * @return the binding for the current row
+     * @throws IllegalStateException if the cursor is not on a row
+     */
+    public Binding getBinding() {
+        if (current == null) {
+            throw new IllegalStateException("Cursor is not positioned on a row");
+        }
+        return current;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.vars.length;
+    }
+
+    @Override
+    public String getColumnName(int index) {
+        return columns.vars[index].getVarName();
+    }
+
+    @Override
+    public int findColumn(String name) {
+        return columns.indexOf(name);
+    }
+
+    @Override
+    public Node getNode(int index) {
+        return getBinding().get(columns.vars[index]);
+    }
+
+    @Override
+    public ResultRow copy() {
+        Binding binding = getBinding();
+        Node[] values = new Node[columns.vars.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = binding.get(columns.vars[i]);
+        }
+        return new Snapshot(columns, values);
+    }
+
+    /**
+     * The column metadata shared by a cursor and all its copies
+     */
+    private static class Columns {
+        private final Var[] vars;
+        private final Map<String, Integer> index;
+
+        private Columns(List<String> names) {
+            this.vars = new Var[names.size()];
+            this.index = new HashMap<>();
+            for (int i = 0; i < vars.length; i++) {
+                vars[i] = Var.alloc(names.get(i));
+                index.putIfAbsent(names.get(i), i);
+            }
+        }
+
+        private int indexOf(String name) {
+            Integer i = index.get(name);
+            return i == null ? -1 : i;
+        }
+    }
+
+    /**
+     * An immutable copy of a row
+     */
+    private static class Snapshot implements ResultRow {
+        private final Columns columns;
+        private final Node[] values;
+
+        private Snapshot(Columns columns, Node[] values) {
+            this.columns = columns;
+            this.values = values;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return values.length;
+        }
+
+        @Override
+        public String getColumnName(int index) {
+            return columns.vars[index].getVarName();
+        }
+
+        @Override
+        public int findColumn(String name) {
+            return columns.indexOf(name);
+        }
+
+        @Override
+        public Node getNode(int index) {
+            return values[index];
+        }
+
+        @Override
+        public ResultRow copy() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(getColumnName(i)).append('=').append(values[i]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeCodec;
+import com.asteroid.duck.jena.util.impl.NodeFingerprint;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finds the rows added and removed between successive executions of the same SELECT query, e.g. when polling.
+ *
+ * Each row is reduced to a 64-bit {@link NodeFingerprint fingerprint} of its values, and only the sorted
+ * fingerprints of the previous run are held in memory (8 bytes per row). The rows themselves are streamed to a
+ * file as they are read, so that those removed can be reported by the next run; memory use is proportional
+ * to the size of the delta, plus the fingerprints.
+ *
+ * The state of a run is one file: the rows, followed by their sorted fingerprints and the row count. It is written
+ * alongside the previous state and atomically moved over it, so a run interrupted at any point leaves either the
+ * old or the new state, never a mix of the two. A directory without the file starts afresh.
+ *
+ * Results are compared as multisets: a row that appears twice in one run and once in the next counts as one
+ * removed. Two different rows sharing a fingerprint (about n<sup>2</sup>/2<sup>65</sup> chance for n rows) would
+ * be treated as the same row.
+ * <pre>
+ * try(ResultDiff diff = ResultDiff.open(stateDirectory)) {
+ *     ResultDiff.Delta delta = diff.diff(queryExecution.execSelect());
+ *     delta.getAdded().forEach(downstream::add);
+ *     delta.getRemoved().forEach(downstream::remove);
+ * }
+ * </pre>
+ * A diff is not thread safe.
+ */
+public class ResultDiff implements AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(ResultDiff.class);
+
+    private static final String ROWS = "rows.dat";
+
+    private final Path directory;
+    private final boolean temporary;
+    private long[] previous;
+
+    private ResultDiff(Path directory, boolean temporary) throws IOException {
+        this.directory = directory;
+        this.temporary = temporary;
+        this.previous = readFingerprints(directory.resolve(ROWS));
+    }
+
+    /**
+     * Create a diff whose state is kept in a temporary directory, deleted when the diff is closed.
+     * The first run reports every row as added.
+     * @return a new diff
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public static ResultDiff create() {
+        try {
+            return new ResultDiff(Files.createTempDirectory("diff"), true);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open a diff whose state is persisted in a directory, so that it continues from the last run made
+     * with the same directory (e.g. before a restart).
+     * @param directory the directory (created if it does not exist)
+     * @return the diff
+     * @throws UncheckedIOException if the state cannot be read
+     */
+    public static ResultDiff open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            return new ResultDiff(directory, false);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of rows in the previous run
+     */
+    public long getPreviousRowCount() {
+        return previous.length;
+    }
+
+    /**
+     * Compare the (remaining) rows of a result set to the previous run, and make them the new previous run.
+     * @param resultSet the current results (this is consumed)
+     * @return the rows added and removed since the previous run
+     * @throws UncheckedIOException if the state cannot be read or written
+     */
+    public Delta diff(ResultSet resultSet) {
+        try {
+            return diff(resultSet.getResultVars(), ResultStream.bindings(resultSet));
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Delta diff(List<String> resultVars, Iterator<Binding> rows) throws IOException {
+        final Var[] vars = ResultStream.vars(resultVars);
+        final BitSet matched = new BitSet(previous.length);
+        final List<Binding> added = new ArrayList<>();
+        long[] current = new long[Math.max(16, previous.length)];
+        int count = 0;
+
+        Path rowsFile = directory.resolve(ROWS);
+        Path newRowsFile = directory.resolve(ROWS + ".new");
+        List<Binding> removed;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newRowsFile), 1 << 16))) {
+            writeVars(out, vars);
+            Node[] values = new Node[vars.length];
+            while (rows.hasNext()) {
+                Binding row = rows.next();
+                for (int i = 0; i < vars.length; i++) {
+                    values[i] = row.get(vars[i]);
+                }
+                long fingerprint = NodeFingerprint.of(values);
+                if (!match(fingerprint, matched)) {
+                    added.add(row);
+                }
+                out.writeLong(fingerprint);
+                NodeCodec.writeRow(out, row, vars);
+                if (count == current.length) {
+                    current = Arrays.copyOf(current, count << 1);
+                }
+                current[count++] = fingerprint;
+            }
+
+            // any previous rows not matched have been removed: read them back from the previous run's rows
+            int unmatched = previous.length - matched.cardinality();
+            removed = new ArrayList<>(unmatched);
+            if (unmatched > 0) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rowsFile), 1 << 16))) {
+                    Var[] previousVars = readVars(in);
+                    for (int i = 0; i < previous.length; i++) {
+                        long fingerprint = in.readLong();
+                        Binding row = NodeCodec.readRow(in, previousVars);
+                        if (match(fingerprint, matched)) {
+                            removed.add(row);
+                        }
+                    }
+                }
+            }
+
+            current = Arrays.copyOf(current, count);
+            Arrays.sort(current);
+            writeFingerprints(out, current);
+        }
+        // the one step that replaces the previous state
+        Files.move(newRowsFile, rowsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        LOG.debug("Diff of " + count + " rows against " + previous.length + ": " + added.size() + " added, " + removed.size() + " removed");
+        previous = current;
+        return new Delta(resultVars, added, removed, count);
+    }
+
+    /**
+     * Find a previous row with a fingerprint not yet matched, and mark it matched
+     * @return false if there is none
+     */
+    private boolean match(long fingerprint, BitSet matched) {
+        int index = Arrays.binarySearch(previous, fingerprint);
+        if (index < 0) {
+            return false;
+        }
+        while (index > 0 && previous[index - 1] == fingerprint) {
+            index--;
+        }
+        for (; index < previous.length && previous[index] == fingerprint; index++) {
+            if (!matched.get(index)) {
+                matched.set(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close the diff, deleting its state if it is temporary
+     */
+    @Override
+    public void close() {
+        if (temporary) {
+            for (String name : new String[] { ROWS, ROWS + ".new" }) {
+                delete(directory.resolve(name));
+            }
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e) {
+            LOG.warn("Unable to delete " + file, e);
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Read the sorted fingerprints from the end of a state file
+     * @return the fingerprints (none if there is no state file)
+     */
+    private static long[] readFingerprints(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new long[0];
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Integer.BYTES) {
+                throw new IOException("Truncated state file " + file);
+            }
+            int count = readFully(channel.position(size - Integer.BYTES), Integer.BYTES).getInt();
+            long start = size - Integer.BYTES - (long) count * Long.BYTES;
+            if (count < 0 || count > Integer.MAX_VALUE / Long.BYTES || start < Integer.BYTES) {
+                throw new IOException("Corrupt state file " + file);
+            }
+            long[] fingerprints = new long[count];
+            readFully(channel.position(start), count * Long.BYTES).asLongBuffer().get(fingerprints);
+            return fingerprints;
+        }
+    }
+
+    private static ByteBuffer readFully(SeekableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write the sorted fingerprints and their count, ending a state file
+     */
+    private static void writeFingerprints(DataOutputStream out, long[] fingerprints) throws IOException {
+        for (long fingerprint : fingerprints) {
+            out.writeLong(fingerprint);
+        }
+        out.writeInt(fingerprints.length);
+    }
+
+    private static void writeVars(DataOutputStream out, Var[] vars) throws IOException {
+        out.writeInt(vars.length);
+        for (Var var : vars) {
+            out.writeUTF(var.getVarName());
+        }
+    }
+
+    private static Var[] readVars(DataInputStream in) throws IOException {
+        Var[] vars = new Var[in.readInt()];
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = Var.alloc(in.readUTF());
+        }
+        return vars;
+    }
+
+    /**
+     * The changes between two runs
+     */
+    public static class Delta {
+        private final List<String> resultVars;
+        private final List<Binding> added;
+        private final List<Binding> removed;
+        private final long rowCount;
+
+        private Delta(List<String> resultVars, List<Binding> added, List<Binding> removed, long rowCount) {
+            this.resultVars = Collections.unmodifiableList(new ArrayList<>(resultVars));
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * @return the variables of the current results
+         */
+        public List<String> getResultVars() {
+            return resultVars;
+        }
+
+        /**
+         * @return rows in the current run but not the previous one (in result order)
+         */
+        public List<Binding> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return rows in the previous run but not the current one (in their previous order)
+         */
+        public List<Binding> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the number of rows in the current run
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return true if nothing changed
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
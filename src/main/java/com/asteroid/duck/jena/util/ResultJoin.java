@@ -0,0 +1,523 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeCodec;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.NodeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Client side joins of two streams of {@link Binding}s (e.g. from {@link ResultStream#streamBindings}) on a shared
+ * variable - for joins that cannot be written as one SPARQL query (e.g. across datasets).
+ *
+ * Output rows are the {@link Algebra#merge(Binding, Binding) merge} of compatible input rows; input rows where the
+ * join variable is unbound are dropped. The result streams are lazy and should be closed (which also closes the
+ * inputs and removes any temporary files) if they are not fully consumed.
+ */
+public class ResultJoin {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(ResultJoin.class);
+    /** Number of partitions when a hash join spills to disk */
+    private static final int PARTITIONS = 32;
+    /** The most times a hash join partition is split again before joining it by nested loop */
+    private static final int MAX_LEVELS = 4;
+
+    /**
+     * Sort-merge join of two streams that are both sorted on the join variable by {@link NodeUtils#compareRDFTerms}.
+     * See {@link #mergeJoin(Stream, Stream, String, Comparator)}.
+     * @param left the left input (sorted on the variable)
+     * @param right the right input (sorted on the variable)
+     * @param variable the join variable
+     * @return the joined rows
+     */
+    public static Stream<Binding> mergeJoin(Stream<Binding> left, Stream<Binding> right, String variable) {
+        return mergeJoin(left, right, variable, NodeUtils::compareRDFTerms);
+    }
+
+    /**
+     * Sort-merge join of two streams that are both sorted on the join variable. Only the left rows sharing the
+     * current key are held in memory.
+     * @param left the left input (sorted on the variable)
+     * @param right the right input (sorted on the variable)
+     * @param variable the join variable
+     * @param order the order both inputs are sorted in
+     * @return the joined rows, in key order
+     * @throws IllegalStateException (from the stream) if either input is found not to be sorted
+     */
+    public static Stream<Binding> mergeJoin(Stream<Binding> left, Stream<Binding> right, String variable, Comparator<Node> order) {
+        MergeJoinIterator iterator = new MergeJoinIterator(left.iterator(), right.iterator(), Var.alloc(variable), order);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(left::close)
+                .onClose(right::close);
+    }
+
+    /**
+     * Hash join of two streams, spilling to the default temporary directory.
+     * See {@link #hashJoin(Stream, Stream, String, int, Path)}.
+     * @param left the left input
+     * @param right the right input
+     * @param variable the join variable
+     * @param maxRowsInMemory the most rows held in the in memory hash table
+     * @return the joined rows
+     */
+    public static Stream<Binding> hashJoin(Stream<Binding> left, Stream<Binding> right, String variable, int maxRowsInMemory) {
+        return hashJoin(left, right, variable, maxRowsInMemory, null);
+    }
+
+    /**
+     * Hash join of two streams. A hash table is built from one input and the other is streamed past it. The
+     * table is built from the left input unless both inputs have a known size and the right one is smaller.
+     *
+     * If the build input has more than <code>maxRowsInMemory</code> rows, both inputs are partitioned by key into
+     * temporary files (a "grace" hash join) and each partition is joined in turn, so only one partition of the
+     * build input is in memory at a time. A partition still too big is partitioned again with a differently seeded
+     * hash; one that cannot be split (e.g. a single key with more than <code>maxRowsInMemory</code> rows) is joined
+     * by a block nested loop, reading its build rows <code>maxRowsInMemory</code> at a time and scanning its probe
+     * rows once per block.
+     * @param left the left input
+     * @param right the right input
+     * @param variable the join variable
+     * @param maxRowsInMemory the most rows held in the in memory hash table before spilling
+     * @param spillDirectory where to create temporary files (null for the default temporary directory)
+     * @return the joined rows
+     */
+    public static Stream<Binding> hashJoin(Stream<Binding> left, Stream<Binding> right, String variable, int maxRowsInMemory,
+                                           Path spillDirectory) {
+        Spliterator<Binding> l = left.spliterator();
+        Spliterator<Binding> r = right.spliterator();
+        long leftSize = l.getExactSizeIfKnown();
+        long rightSize = r.getExactSizeIfKnown();
+        boolean swap = leftSize >= 0 && rightSize >= 0 && rightSize < leftSize;
+        HashJoin join = new HashJoin(Var.alloc(variable), maxRowsInMemory, spillDirectory);
+        // nothing is read until the stream is used
+        return StreamSupport.stream(() -> join.run(swap ? r : l, swap ? l : r).spliterator(), Spliterator.NONNULL, false)
+                .onClose(join::close)
+                .onClose(left::close)
+                .onClose(right::close);
+    }
+
+    /**
+     * Walks two sorted inputs together
+     */
+    private static class MergeJoinIterator implements Iterator<Binding> {
+        private final PeekingIterator left;
+        private final PeekingIterator right;
+        private final Var var;
+        private final Comparator<Node> order;
+        private final Deque<Binding> pending = new ArrayDeque<>();
+        private List<Binding> group = null;
+        private Node groupKey = null;
+
+        private MergeJoinIterator(Iterator<Binding> left, Iterator<Binding> right, Var var, Comparator<Node> order) {
+            this.left = new PeekingIterator(left, var, order);
+            this.right = new PeekingIterator(right, var, order);
+            this.var = var;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending.isEmpty() && advance()) {
+                // keep going
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Binding next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.removeFirst();
+        }
+
+        /**
+         * Take one step through the inputs
+         * @return false when there can be no more results
+         */
+        private boolean advance() {
+            if (group != null) {
+                if (right.hasNext() && order.compare(right.peekKey(), groupKey) == 0) {
+                    Binding row = right.next();
+                    for (Binding candidate : group) {
+                        Binding merged = Algebra.merge(candidate, row);
+                        if (merged != null) {
+                            pending.add(merged);
+                        }
+                    }
+                    return true;
+                }
+                group = null;
+            }
+            if (!left.hasNext() || !right.hasNext()) {
+                return false;
+            }
+            int c = order.compare(left.peekKey(), right.peekKey());
+            if (c < 0) {
+                left.next();
+            }
+            else if (c > 0) {
+                right.next();
+            }
+            else {
+                groupKey = left.peekKey();
+                group = new ArrayList<>();
+                while (left.hasNext() && order.compare(left.peekKey(), groupKey) == 0) {
+                    group.add(left.next());
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An iterator over rows with the join variable bound, that checks they are in order
+     */
+    private static class PeekingIterator {
+        private final Iterator<Binding> iterator;
+        private final Var var;
+        private final Comparator<Node> order;
+        private Binding next;
+        private Node lastKey;
+
+        private PeekingIterator(Iterator<Binding> iterator, Var var, Comparator<Node> order) {
+            this.iterator = iterator;
+            this.var = var;
+            this.order = order;
+        }
+
+        private boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                Binding candidate = iterator.next();
+                Node key = candidate.get(var);
+                if (key != null) {
+                    if (lastKey != null && order.compare(lastKey, key) > 0) {
+                        throw new IllegalStateException("Input is not sorted on " + var + ": " + key + " after " + lastKey);
+                    }
+                    lastKey = key;
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        private Node peekKey() {
+            return next.get(var);
+        }
+
+        private Binding next() {
+            hasNext();
+            Binding result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * The state of a hash join, including any partition files
+     */
+    private static class HashJoin implements AutoCloseable {
+        private final Var var;
+        private final int maxRowsInMemory;
+        private final Path spillDirectory;
+        /** Partition files not yet deleted */
+        private final Set<Path> files = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        private HashJoin(Var var, int maxRowsInMemory, Path spillDirectory) {
+            this.var = var;
+            this.maxRowsInMemory = maxRowsInMemory;
+            this.spillDirectory = spillDirectory;
+        }
+
+        private Stream<Binding> run(Spliterator<Binding> build, Spliterator<Binding> probe) {
+            Map<Node, List<Binding>> table = new HashMap<>();
+            Iterator<Binding> rows = Spliterators.iterator(build);
+            int count = 0;
+            while (rows.hasNext()) {
+                Binding row = rows.next();
+                Node key = row.get(var);
+                if (key == null) {
+                    continue;
+                }
+                if (count == maxRowsInMemory) {
+                    LOG.debug("Hash join build side exceeds " + maxRowsInMemory + " rows, spilling to disk");
+                    return spill(table, row, rows, Spliterators.iterator(probe));
+                }
+                table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+                count++;
+            }
+            return StreamSupport.stream(probe, false).flatMap(row -> probe(table, row));
+        }
+
+        private Stream<Binding> probe(Map<Node, List<Binding>> table, Binding row) {
+            Node key = row.get(var);
+            List<Binding> matches = key == null ? null : table.get(key);
+            if (matches == null) {
+                return Stream.empty();
+            }
+            return matches.stream().map(match -> Algebra.merge(match, row)).filter(Objects::nonNull);
+        }
+
+        private Stream<Binding> spill(Map<Node, List<Binding>> table, Binding current, Iterator<Binding> build,
+                                      Iterator<Binding> probe) {
+            Partitions buildPartitions;
+            Partitions probePartitions;
+            long rows = 0;
+            try {
+                try (Partitions partitions = new Partitions(0)) {
+                    for (List<Binding> list : table.values()) {
+                        for (Binding row : list) {
+                            partitions.write(row);
+                        }
+                    }
+                    table.clear();
+                    partitions.write(current);
+                    while (build.hasNext()) {
+                        partitions.write(build.next());
+                    }
+                    buildPartitions = partitions;
+                }
+                try (Partitions partitions = new Partitions(0)) {
+                    while (probe.hasNext()) {
+                        partitions.write(probe.next());
+                    }
+                    probePartitions = partitions;
+                }
+            }
+            catch(IOException e) {
+                close();
+                throw new UncheckedIOException("Unable to spill hash join", e);
+            }
+            for (long count : buildPartitions.counts) {
+                rows += count;
+            }
+            return joinPartitions(buildPartitions, probePartitions, rows, 0);
+        }
+
+        private Stream<Binding> joinPartitions(Partitions build, Partitions probe, long rows, int level) {
+            return IntStream.range(0, PARTITIONS).boxed()
+                    .flatMap(i -> joinPartition(build.files[i], probe.files[i], build.counts[i], rows, level));
+        }
+
+        /**
+         * Join one partition: in memory if its build rows fit, otherwise by partitioning it again with the hash of
+         * the next level, or (if that would not split it, e.g. one key with more than the maximum rows) by a block
+         * nested loop join
+         * @param rows the number of build rows in the partition
+         * @param parentRows the number of build rows in the partition it was split from
+         */
+        private Stream<Binding> joinPartition(Path build, Path probe, long rows, long parentRows, int level) {
+            if (rows == 0) {
+                delete(build);
+                delete(probe);
+                return Stream.empty();
+            }
+            if (rows <= maxRowsInMemory) {
+                Map<Node, List<Binding>> table = new HashMap<>();
+                try (Stream<Binding> buildRows = read(build)) {
+                    buildRows.forEach(row -> table.computeIfAbsent(row.get(var), k -> new ArrayList<>(1)).add(row));
+                }
+                delete(build);
+                return read(probe).flatMap(row -> probe(table, row)).onClose(() -> delete(probe));
+            }
+            if (rows < parentRows && level < MAX_LEVELS) {
+                LOG.debug("Hash join partition of " + rows + " rows exceeds " + maxRowsInMemory + ", partitioning again");
+                Partitions buildPartitions = repartition(build, level + 1);
+                Partitions probePartitions = repartition(probe, level + 1);
+                return joinPartitions(buildPartitions, probePartitions, rows, level + 1);
+            }
+            LOG.debug("Hash join partition of " + rows + " rows cannot be split, joining by block nested loop");
+            return nestedLoop(build, probe);
+        }
+
+        /**
+         * Split a partition file with the hash of a level, deleting it
+         */
+        private Partitions repartition(Path file, int level) {
+            try (Partitions partitions = new Partitions(level); Stream<Binding> rows = read(file)) {
+                rows.forEach(row -> {
+                    try {
+                        partitions.write(row);
+                    }
+                    catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                delete(file);
+                return partitions;
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException("Unable to spill hash join", e);
+            }
+        }
+
+        /**
+         * Join a partition too big for memory: read the build rows in blocks of the maximum size and scan the
+         * probe rows past each block
+         */
+        private Stream<Binding> nestedLoop(Path build, Path probe) {
+            final Stream<Binding> buildRows = read(build);
+            final Iterator<Binding> rows = buildRows.iterator();
+            Iterator<Map<Node, List<Binding>>> blocks = new Iterator<Map<Node, List<Binding>>>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Map<Node, List<Binding>> next() {
+                    Map<Node, List<Binding>> table = new HashMap<>();
+                    for (int count = 0; count < Math.max(1, maxRowsInMemory) && rows.hasNext(); count++) {
+                        Binding row = rows.next();
+                        table.computeIfAbsent(row.get(var), k -> new ArrayList<>(1)).add(row);
+                    }
+                    return table;
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(blocks, Spliterator.NONNULL), false)
+                    .flatMap(table -> read(probe).flatMap(row -> probe(table, row)))
+                    .onClose(() -> {
+                        buildRows.close();
+                        delete(build);
+                        delete(probe);
+                    });
+        }
+
+        /**
+         * @return the rows of a partition file, closing it when the stream is closed
+         */
+        private static Stream<Binding> read(Path file) {
+            final DataInputStream in;
+            try {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Iterator<Binding> rows = new Iterator<Binding>() {
+                private Binding next = readOrNull(in);
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Binding next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Binding result = next;
+                    next = readOrNull(in);
+                    return result;
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        try {
+                            in.close();
+                        }
+                        catch(IOException e) {
+                            LOG.warn("Unable to close partition", e);
+                        }
+                    });
+        }
+
+        /**
+         * @return the next row, or null at the end of the file
+         */
+        private static Binding readOrNull(DataInputStream in) {
+            try {
+                return NodeCodec.readBinding(in);
+            }
+            catch(EOFException e) {
+                return null;
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The partition of a key at a level of partitioning: each level mixes the hash with a different seed, so
+         * that the keys of one partition are spread over the partitions of the next level
+         */
+        private static int partition(Node key, int level) {
+            int h = key.hashCode() ^ (level * 0x9E3779B9);
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return (h & Integer.MAX_VALUE) % PARTITIONS;
+        }
+
+        private void delete(Path file) {
+            if (file != null && files.remove(file)) {
+                try {
+                    Files.deleteIfExists(file);
+                }
+                catch(IOException e) {
+                    LOG.warn("Unable to delete " + file, e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Path file : new ArrayList<>(files)) {
+                delete(file);
+            }
+        }
+
+        /**
+         * A set of partition files being written, and the number of rows written to each
+         */
+        private class Partitions implements Closeable {
+            private final int level;
+            private final Path[] files = new Path[PARTITIONS];
+            private final long[] counts = new long[PARTITIONS];
+            private final DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+
+            private Partitions(int level) throws IOException {
+                this.level = level;
+                for (int i = 0; i < PARTITIONS; i++) {
+                    files[i] = spillDirectory == null ? Files.createTempFile("join", ".part")
+                            : Files.createTempFile(spillDirectory, "join", ".part");
+                    HashJoin.this.files.add(files[i]);
+                    outputs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[i]), 1 << 14));
+                }
+            }
+
+            private void write(Binding row) throws IOException {
+                Node key = row.get(var);
+                if (key != null) {
+                    int partition = partition(key, level);
+                    NodeCodec.writeBinding(outputs[partition], row);
+                    counts[partition]++;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                for (DataOutputStream out : outputs) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+        }
+    }
+}
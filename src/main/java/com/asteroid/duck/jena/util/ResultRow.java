@@ -0,0 +1,110 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.util.ModelUtils;
+
+/**
+ * A single row of a query result, with values accessed by column index (0 based, in the order of
+ * {@link org.apache.jena.query.ResultSet#getResultVars()}) or by variable name.
+ *
+ * Rows returned by a {@link ResultCursor} are live views that change as the cursor advances; use {@link #copy()}
+ * to keep one.
+ */
+public interface ResultRow {
+
+    /**
+     * @return the number of columns (variables) in the row
+     */
+    int getColumnCount();
+
+    /**
+     * @param index the column index
+     * @return the variable name for the column
+     */
+    String getColumnName(int index);
+
+    /**
+     * Find the index of a column by variable name
+     * @param name the variable name
+     * @return the column index, or -1 if there is no such variable
+     */
+    int findColumn(String name);
+
+    /**
+     * @param index the column index
+     * @return the value of the column in this row, or null if unbound
+     */
+    Node getNode(int index);
+
+    /**
+     * @param name the variable name
+     * @return the value of the variable in this row, or null if unbound (or no such variable)
+     */
+    default Node getNode(String name) {
+        int index = findColumn(name);
+        return index < 0 ? null : getNode(index);
+    }
+
+    /**
+     * @param index the column index
+     * @return true if the column has a value in this row
+     */
+    default boolean isBound(int index) {
+        return getNode(index) != null;
+    }
+
+    /**
+     * @param index the column index
+     * @return the URI of the column value, or null if it is not a URI
+     */
+    default String getURI(int index) {
+        Node node = getNode(index);
+        return node != null && node.isURI() ? node.getURI() : null;
+    }
+
+    /**
+     * @param name the variable name
+     * @return the URI of the variable value, or null if it is not a URI
+     */
+    default String getURI(String name) {
+        int index = findColumn(name);
+        return index < 0 ? null : getURI(index);
+    }
+
+    /**
+     * @param index the column index
+     * @return the lexical form of the column value, or null if it is not a literal
+     */
+    default String getLexicalForm(int index) {
+        Node node = getNode(index);
+        return node != null && node.isLiteral() ? node.getLiteralLexicalForm() : null;
+    }
+
+    /**
+     * @param name the variable name
+     * @return the lexical form of the variable value, or null if it is not a literal
+     */
+    default String getLexicalForm(String name) {
+        int index = findColumn(name);
+        return index < 0 ? null : getLexicalForm(index);
+    }
+
+    /**
+     * Wrap a column value as an {@link RDFNode}. NOTE: This creates a new object on every call.
+     * @param index the column index
+     * @param model the model for the wrapper (may be null)
+     * @return the RDF node, or null if unbound
+     */
+    default RDFNode getRDFNode(int index, Model model) {
+        Node node = getNode(index);
+        return node == null ? null : ModelUtils.convertGraphNodeToRDFNode(node, model);
+    }
+
+    /**
+     * Take a snapshot of the current values in this row that will not change if the source is advanced
+     * @return a copy of this row
+     */
+    ResultRow copy();
+}
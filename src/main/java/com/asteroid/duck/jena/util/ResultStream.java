@@ -3,17 +3,33 @@
  */
 package com.asteroid.duck.jena.util;
 
+import com.asteroid.duck.jena.util.impl.BatchSpliterator;
+import com.asteroid.duck.jena.util.impl.ClosingResultSet;
+import com.asteroid.duck.jena.util.impl.NumericSpliterators;
+import com.asteroid.duck.jena.util.impl.PrefetchSpliterator;
 import com.asteroid.duck.jena.util.impl.TinyReadOnlyMap;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetRewindable;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.BaseStream;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -49,6 +65,20 @@ public class ResultStream {
                 .map(resource -> resource.getURI());
     }
 
+    /**
+     * Given a variable name and a result set produce a stream of resource URIs, where equal URIs share a single
+     * instance from the given pool.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @param pool the pool used to intern the URIs
+     * @return a stream of URIs
+     */
+    public static Stream<String> streamResourceURIs(final ResultSet resultSet, final String keyVariable, final InternPool<String> pool) {
+        return streamNodes(resultSet, keyVariable)
+                .filter(node -> node != null && node.isURI())
+                .map(node -> pool.intern(node.getURI()));
+    }
+
     /**
      * Given a variable name and a result set produce a stream of literal values
      * @param resultSet
@@ -71,20 +101,7 @@ public class ResultStream {
         if (!resultSet.getResultVars().contains(keyVariable)) {
             LOG.warn("No variable '"+keyVariable+"' in ResultSet vars");
         }
-        Iterator<RDFNode> iterator = new Iterator<RDFNode>() {
-            @Override
-            public boolean hasNext() {
-                return resultSet.hasNext();
-            }
-
-            @Override
-            public RDFNode next() {
-                QuerySolution solution = resultSet.next();
-                return solution.get(keyVariable);
-            }
-        };
-        Spliterator<RDFNode> spliterator = Spliterators.spliteratorUnknownSize(iterator, 0);
-        return StreamSupport.stream(spliterator, false);
+        return stream(resultSet).map(solution -> solution.get(keyVariable));
     }
 
     /**
@@ -108,18 +125,457 @@ public class ResultStream {
     }
 
     /**
-     * Convert a result set into a stream. If the result set is {@link ResultSetRewindable rewindable} then the size
-     * is offered as a hint to the spliterator.
+     * Given a variable name and a result set produce a (non-parallel) stream of graph level {@link Node}s.
+     * This works directly from the {@link Binding} for each row so the variable is resolved only once and
+     * no {@link RDFNode} wrapper is created per row.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @return a stream of nodes (null where the variable is unbound in a row)
+     */
+    public static Stream<Node> streamNodes(final ResultSet resultSet, final String keyVariable) {
+        if (!resultSet.getResultVars().contains(keyVariable)) {
+            LOG.warn("No variable '"+keyVariable+"' in ResultSet vars");
+        }
+        final Var var = Var.alloc(keyVariable);
+        return streamBindings(resultSet).map(binding -> binding.get(var));
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of graph level {@link Node}s, where
+     * equal nodes share a single instance from the given pool.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @param pool the pool used to intern the nodes
+     * @return a stream of nodes (null where the variable is unbound in a row)
+     */
+    public static Stream<Node> streamNodes(final ResultSet resultSet, final String keyVariable, final InternPool<Node> pool) {
+        return streamNodes(resultSet, keyVariable).map(pool);
+    }
+
+    /**
+     * Given a result set and some variable names produce a (non-parallel) stream of {@link Node} arrays. Each array
+     * holds the values of the variables (in the order given) for one row.
+     * @param resultSet the result set
+     * @param variables the variables to extract from the result set
+     * @return a stream of node arrays (elements are null where a variable is unbound in a row)
+     */
+    public static Stream<Node[]> streamNodeTuples(final ResultSet resultSet, final String... variables) {
+        final Var[] vars = vars(Arrays.asList(variables));
+        return streamBindings(resultSet).map(binding -> {
+            Node[] values = new Node[vars.length];
+            for (int i = 0; i < vars.length; i++) {
+                values[i] = binding.get(vars[i]);
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Convert a result set into a (non-parallel) stream of the underlying {@link Binding}s using
+     * {@link ResultSet#nextBinding()}. This avoids creating a {@link QuerySolution} for each row.
+     * Like {@link #stream(ResultSet)} the stream is sized for {@link ResultSetRewindable rewindable} result sets
+     * and splits in batches when parallel.
+     * @param resultSet the result set to stream
+     * @return a stream of bindings
+     */
+    public static Stream<Binding> streamBindings(final ResultSet resultSet) {
+        return StreamSupport.stream(new BatchSpliterator<>(bindings(resultSet), remaining(resultSet)), false);
+    }
+
+    /**
+     * Convert a result set into a stream of {@link QuerySolution}s that are read ahead of the consumer by a
+     * background (daemon) thread, so that query evaluation overlaps with downstream processing.
+     * See {@link #streamBindingsPrefetched(ResultSet, int, int, Executor)}.
+     * @param resultSet the result set to stream
+     * @param batchSize the number of rows in each buffered batch
+     * @param bufferDepth the maximum number of batches buffered ahead of the consumer
+     * @return a stream of {@link QuerySolution}s, which should be closed if not fully consumed
+     */
+    public static Stream<QuerySolution> streamPrefetched(final ResultSet resultSet, final int batchSize, final int bufferDepth) {
+        PrefetchSpliterator<QuerySolution> spliterator = new PrefetchSpliterator<>(resultSet, batchSize, bufferDepth);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Convert a result set into a stream of {@link Binding}s that are read ahead of the consumer by a
+     * background (daemon) thread. See {@link #streamBindingsPrefetched(ResultSet, int, int, Executor)}.
+     * @param resultSet the result set to stream
+     * @param batchSize the number of rows in each buffered batch
+     * @param bufferDepth the maximum number of batches buffered ahead of the consumer
+     * @return a stream of {@link Binding}s, which should be closed if not fully consumed
+     */
+    public static Stream<Binding> streamBindingsPrefetched(final ResultSet resultSet, final int batchSize, final int bufferDepth) {
+        PrefetchSpliterator<Binding> spliterator = new PrefetchSpliterator<>(bindings(resultSet), batchSize, bufferDepth);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Convert a result set into a stream of {@link Binding}s that are read ahead of the consumer by a producer task
+     * running on the given executor. The producer drains the result set into a bounded buffer of batches, waiting
+     * when it is full. Any exception from the result set is rethrown to the consumer of the stream.
+     *
+     * Closing the stream cancels the producer, so a stream that is not fully consumed (e.g. <code>findFirst()</code>)
+     * should be closed, for example with try-with-resources.
+     *
+     * NOTE: The result set is read on the producer thread. For transactional datasets (e.g. TDB) that thread
+     * will not be inside the caller's transaction.
+     * @param resultSet the result set to stream
+     * @param batchSize the number of rows in each buffered batch
+     * @param bufferDepth the maximum number of batches buffered ahead of the consumer
+     * @param executor runs the producer task (it occupies a thread until the result set is drained or the stream closed)
+     * @return a stream of {@link Binding}s, which should be closed if not fully consumed
+     */
+    public static Stream<Binding> streamBindingsPrefetched(final ResultSet resultSet, final int batchSize, final int bufferDepth,
+                                                           final Executor executor) {
+        PrefetchSpliterator<Binding> spliterator = new PrefetchSpliterator<>(bindings(resultSet), batchSize, bufferDepth, executor);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of double values, parsed directly
+     * from the literal lexical forms. Unbound and non-numeric values are {@link NumericPolicy#SKIP skipped}.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @return a stream of doubles
+     */
+    public static DoubleStream streamDoubles(final ResultSet resultSet, final String keyVariable) {
+        return streamDoubles(resultSet, keyVariable, NumericPolicy.SKIP, 0.0);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of double values, parsed directly
+     * from the literal lexical forms.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @param policy what to do with unbound or non-numeric values
+     * @param defaultValue the value to use for {@link NumericPolicy#DEFAULT}
+     * @return a stream of doubles
+     * @throws NonNumericValueException (from the stream) for unbound or non-numeric values with {@link NumericPolicy#FAIL}
+     */
+    public static DoubleStream streamDoubles(final ResultSet resultSet, final String keyVariable,
+                                             final NumericPolicy policy, final double defaultValue) {
+        return StreamSupport.doubleStream(NumericSpliterators.doubles(bindings(resultSet), remaining(resultSet),
+                Var.alloc(keyVariable), policy, defaultValue), false);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of long values, parsed directly
+     * from the literal lexical forms. Unbound and non-integer values are {@link NumericPolicy#SKIP skipped}.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @return a stream of longs
+     */
+    public static LongStream streamLongs(final ResultSet resultSet, final String keyVariable) {
+        return streamLongs(resultSet, keyVariable, NumericPolicy.SKIP, 0L);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of long values, parsed directly
+     * from the literal lexical forms.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @param policy what to do with unbound or non-integer values
+     * @param defaultValue the value to use for {@link NumericPolicy#DEFAULT}
+     * @return a stream of longs
+     * @throws NonNumericValueException (from the stream) for unbound or non-integer values with {@link NumericPolicy#FAIL}
+     */
+    public static LongStream streamLongs(final ResultSet resultSet, final String keyVariable,
+                                         final NumericPolicy policy, final long defaultValue) {
+        return StreamSupport.longStream(NumericSpliterators.longs(bindings(resultSet), remaining(resultSet),
+                Var.alloc(keyVariable), policy, defaultValue), false);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of int values, parsed directly
+     * from the literal lexical forms. Unbound and non-integer values are {@link NumericPolicy#SKIP skipped}.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @return a stream of ints
+     */
+    public static IntStream streamInts(final ResultSet resultSet, final String keyVariable) {
+        return streamInts(resultSet, keyVariable, NumericPolicy.SKIP, 0);
+    }
+
+    /**
+     * Given a variable name and a result set produce a (non-parallel) stream of int values, parsed directly
+     * from the literal lexical forms.
+     * @param resultSet the result set
+     * @param keyVariable the variable to extract from the result set
+     * @param policy what to do with unbound or non-integer values
+     * @param defaultValue the value to use for {@link NumericPolicy#DEFAULT}
+     * @return a stream of ints
+     * @throws NonNumericValueException (from the stream) for unbound or non-integer values with {@link NumericPolicy#FAIL}
+     */
+    public static IntStream streamInts(final ResultSet resultSet, final String keyVariable,
+                                       final NumericPolicy policy, final int defaultValue) {
+        return StreamSupport.intStream(NumericSpliterators.ints(bindings(resultSet), remaining(resultSet),
+                Var.alloc(keyVariable), policy, defaultValue), false);
+    }
+
+    /**
+     * Given a result set produce a (non-parallel) stream of objects created from each row by a
+     * {@link RowBinder} for the given type (compiled once for the result variables and type).
+     * @param resultSet the result set
+     * @param type the class to create for each row
+     * @param <T> the type of object created
+     * @return a stream of objects
+     * @throws IllegalArgumentException if the type cannot be bound
+     */
+    public static <T> Stream<T> streamAs(final ResultSet resultSet, final Class<T> type) {
+        return streamBindings(resultSet).map(RowBinder.of(resultSet.getResultVars(), type));
+    }
+
+    /**
+     * Materialize a result set in a columnar, dictionary encoded layout for repeated scanning and aggregation.
+     * @param resultSet the result set (this is consumed)
+     * @return the columnar results
+     */
+    public static ColumnarResults toColumnar(final ResultSet resultSet) {
+        return ColumnarResults.of(resultSet);
+    }
+
+    /**
+     * Create a reusable {@link ResultCursor} over a result set. This is a low garbage alternative to
+     * {@link #streamRawVariables(ResultSet)} when scanning large results.
+     * @param resultSet the result set
+     * @return a cursor positioned before the first row
+     */
+    public static ResultCursor cursor(final ResultSet resultSet) {
+        return new ResultCursor(resultSet);
+    }
+
+    /**
+     * A collector that groups rows by the values of some variables and computes aggregates for each group
+     * (like SPARQL GROUP BY). Each group holds a single {@link AggregateGroup} with primitive state, and parallel
+     * streams combine the per thread groups.
+     * <pre>
+     * Map&lt;List&lt;Node&gt;, AggregateGroup&gt; byClass = ResultStream.streamBindings(resultSet)
+     *         .collect(ResultStream.groupBy(Arrays.asList("class"), Aggregate.count(), Aggregate.avg("weight")));
+     * </pre>
+     * @param groupBy the variables to group by (may be empty for a single group of all rows)
+     * @param aggregates the aggregates to compute
+     * @return the collector, producing a map from group key (the values of the group variables in order) to group
+     */
+    public static Collector<Binding, ?, Map<List<Node>, AggregateGroup>> groupBy(final List<String> groupBy, final Aggregate... aggregates) {
+        final AggregateGroup.Layout layout = new AggregateGroup.Layout(groupBy, aggregates);
+        return Collector.of(
+                HashMap::new,
+                (Map<List<Node>, AggregateGroup> groups, Binding binding) -> {
+                    AggregateGroup.Key key = layout.key(binding);
+                    AggregateGroup group = groups.get(key);
+                    if (group == null) {
+                        group = layout.group(key);
+                        groups.put(key, group);
+                    }
+                    group.accumulate(binding);
+                },
+                (left, right) -> {
+                    right.forEach((key, group) -> left.merge(key, group, (a, b) -> {
+                        a.combine(b);
+                        return a;
+                    }));
+                    return left;
+                },
+                Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Group the (remaining) rows of a result set and compute aggregates for each group
+     * @param resultSet the result set (this is consumed)
+     * @param groupBy the variables to group by (may be empty for a single group of all rows)
+     * @param aggregates the aggregates to compute
+     * @return a map from group key (the values of the group variables in order) to group
+     * @see #groupBy(List, Aggregate...)
+     */
+    public static Map<List<Node>, AggregateGroup> aggregate(final ResultSet resultSet, final List<String> groupBy, final Aggregate... aggregates) {
+        return streamBindings(resultSet).collect(groupBy(groupBy, aggregates));
+    }
+
+    /**
+     * Execute a SELECT query and stream the results, tying the lifecycle of the {@link QueryExecution} to the stream.
+     * The execution is closed once the results are exhausted; if the stream is closed before that (e.g. after a
+     * short-circuiting <code>findFirst()</code> or <code>limit(n)</code> inside try-with-resources) the execution is
+     * {@link QueryExecution#abort() aborted} and closed, releasing its iterators and any sort buffers straight away.
+     *
+     * <pre>
+     * try (Stream&lt;String&gt; uris = ResultStream.execute(qexec, rs -&gt; ResultStream.streamResourceURIs(rs, "s"))) {
+     *     first = uris.findFirst();
+     * }
+     * </pre>
+     * @param execution the query execution (ownership passes to the stream)
+     * @param streamFactory creates the stream from the result set (e.g. one of the other methods here)
+     * @param <S> the type of stream
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static <S extends BaseStream<?, S>> S execute(final QueryExecution execution, final Function<ResultSet, S> streamFactory) {
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final AtomicBoolean exhausted = new AtomicBoolean(false);
+        final Runnable close = () -> {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    if (!exhausted.get()) {
+                        execution.abort();
+                    }
+                    execution.close();
+                }
+                catch(RuntimeException e) {
+                    LOG.warn("Unable to close query execution", e);
+                }
+            }
+        };
+        try {
+            ResultSet resultSet = new ClosingResultSet(execution.execSelect(), () -> {
+                exhausted.set(true);
+                close.run();
+            });
+            return streamFactory.apply(resultSet).onClose(close);
+        }
+        catch(RuntimeException e) {
+            close.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a SELECT query and stream the {@link QuerySolution}s, closing (or aborting) the execution with the
+     * stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<QuerySolution> stream(final QueryExecution execution) {
+        return execute(execution, ResultStream::stream);
+    }
+
+    /**
+     * Execute a SELECT query and stream the {@link Binding}s, closing (or aborting) the execution with the
+     * stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<Binding> streamBindings(final QueryExecution execution) {
+        return execute(execution, ResultStream::streamBindings);
+    }
+
+    /**
+     * Execute a SELECT query and stream the values of a variable, closing (or aborting) the execution with the
+     * stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @param keyVariable the variable to extract from the results
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<RDFNode> streamRawVariable(final QueryExecution execution, final String keyVariable) {
+        return execute(execution, resultSet -> streamRawVariable(resultSet, keyVariable));
+    }
+
+    /**
+     * Execute a SELECT query and stream maps of all variable values, closing (or aborting) the execution with the
+     * stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<Map<String, RDFNode>> streamRawVariables(final QueryExecution execution) {
+        return execute(execution, ResultStream::streamRawVariables);
+    }
+
+    /**
+     * Execute a SELECT query and stream the resources bound to a variable, closing (or aborting) the execution with
+     * the stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @param keyVariable the variable to extract from the results
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<Resource> streamResources(final QueryExecution execution, final String keyVariable) {
+        return execute(execution, resultSet -> streamResources(resultSet, keyVariable));
+    }
+
+    /**
+     * Execute a SELECT query and stream the resource URIs bound to a variable, closing (or aborting) the execution
+     * with the stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @param keyVariable the variable to extract from the results
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<String> streamResourceURIs(final QueryExecution execution, final String keyVariable) {
+        return execute(execution, resultSet -> streamResourceURIs(resultSet, keyVariable));
+    }
+
+    /**
+     * Execute a SELECT query and stream the literals bound to a variable, closing (or aborting) the execution with
+     * the stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @param keyVariable the variable to extract from the results
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<Literal> streamLiteral(final QueryExecution execution, final String keyVariable) {
+        return execute(execution, resultSet -> streamLiteral(resultSet, keyVariable));
+    }
+
+    /**
+     * Execute a SELECT query and stream the {@link Node}s bound to a variable, closing (or aborting) the execution
+     * with the stream. See {@link #execute(QueryExecution, Function)}.
+     * @param execution the query execution (ownership passes to the stream)
+     * @param keyVariable the variable to extract from the results
+     * @return the stream, which should be closed if it is not fully consumed
+     */
+    public static Stream<Node> streamNodes(final QueryExecution execution, final String keyVariable) {
+        return execute(execution, resultSet -> streamNodes(resultSet, keyVariable));
+    }
+
+    /**
+     * An iterator over the {@link ResultSet#nextBinding() bindings} of a result set
+     * @param resultSet the result set
+     * @return the iterator
+     */
+    static Iterator<Binding> bindings(final ResultSet resultSet) {
+        return new Iterator<Binding>() {
+            @Override
+            public boolean hasNext() {
+                return resultSet.hasNext();
+            }
+
+            @Override
+            public Binding next() {
+                return resultSet.nextBinding();
+            }
+        };
+    }
+
+    /**
+     * Allocate {@link Var}s for a list of variable names
+     * @param variables the variable names
+     * @return the vars in the same order
+     */
+    static Var[] vars(final List<String> variables) {
+        Var[] vars = new Var[variables.size()];
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = Var.alloc(variables.get(i));
+        }
+        return vars;
+    }
+
+    /**
+     * Convert a result set into a (non-parallel) stream. If the result set is {@link ResultSetRewindable rewindable}
+     * then the stream is {@link Spliterator#SIZED sized}.
+     *
+     * The stream may be made {@link Stream#parallel() parallel}, in which case rows are pulled from the result set
+     * in growing batches (see {@link BatchSpliterator}) so that downstream stages spread across the
+     * {@link java.util.concurrent.ForkJoinPool}.
      * @param resultSet The result set to stream
      * @return a stream of {@link QuerySolution}s
      */
     public static Stream<QuerySolution> stream(final ResultSet resultSet) {
-        Spliterator<QuerySolution> spliterator;
+        return StreamSupport.stream(new BatchSpliterator<>(resultSet, remaining(resultSet)), false);
+    }
+
+    /**
+     * The number of rows left in a result set (if known)
+     * @param resultSet the result set
+     * @return the rows remaining if the result set is {@link ResultSetRewindable rewindable}, otherwise -1
+     */
+    static long remaining(final ResultSet resultSet) {
         if(resultSet instanceof ResultSetRewindable) {
-            spliterator = Spliterators.spliterator(resultSet, ((ResultSetRewindable)resultSet).size(), 0);
-        } else {
-            spliterator = Spliterators.spliteratorUnknownSize(resultSet, 0);
+            return Math.max(0, ((ResultSetRewindable)resultSet).size() - resultSet.getRowNumber());
         }
-        return StreamSupport.stream(spliterator, false);
+        return -1;
     }
 }
@@ -0,0 +1,549 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Streams result rows to a {@link WritableByteChannel} (or {@link OutputStream}) as SPARQL CSV, TSV or JSON results.
+ *
+ * Rows are encoded straight from their {@link Node}s into a single reusable {@link ByteBuffer}, which is
+ * written to the channel each time it fills; no intermediate strings are built, so memory use is constant however
+ * many rows are written. The buffer is allocated on the heap, or may be supplied (e.g. a pooled direct buffer) so
+ * that many short-lived writers share one. The encoded bytes of recently written URIs are cached, since result sets typically
+ * repeat the same URIs (classes, predicates, datatypes) many times.
+ *
+ * A writer is not thread safe. Closing it completes the document and flushes, but does not close the channel.
+ * <pre>
+ * try(ResultWriter writer = ResultWriter.create(ResultWriter.Format.JSON, resultSet.getResultVars(), out)) {
+ *     writer.write(resultSet);
+ * }
+ * </pre>
+ */
+public class ResultWriter implements AutoCloseable {
+    /** Default size of the output buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /** Default number of encoded URIs cached */
+    public static final int DEFAULT_URI_CACHE_SIZE = 4096;
+    /** URIs longer than this are never cached */
+    private static final int MAX_CACHED_URI = 1024;
+
+    /**
+     * The supported output formats
+     */
+    public enum Format {
+        /** SPARQL 1.1 Query Results CSV: plain values, no type information */
+        CSV,
+        /** SPARQL 1.1 Query Results TSV: values as RDF terms in N-Triples syntax */
+        TSV,
+        /** SPARQL 1.1 Query Results JSON */
+        JSON
+    }
+
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] JSON_OPEN_ROWS = ascii("]},\"results\":{\"bindings\":[");
+    private static final byte[] JSON_CLOSE = ascii("]}}\n");
+    private static final byte[] JSON_URI = ascii("{\"type\":\"uri\",\"value\":\"");
+    private static final byte[] JSON_BNODE = ascii("{\"type\":\"bnode\",\"value\":\"");
+    private static final byte[] JSON_LITERAL = ascii("{\"type\":\"literal\",\"value\":\"");
+    private static final byte[] JSON_LANG = ascii("\",\"xml:lang\":\"");
+    private static final byte[] JSON_DATATYPE = ascii("\",\"datatype\":\"");
+
+    private final Format format;
+    private final Var[] vars;
+    private final byte[][] jsonNames;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final Map<String, byte[]> uriCache;
+    private long rows = 0;
+    private boolean finished = false;
+
+    /**
+     * Create a writer with a custom buffer and URI cache size
+     * @param format the output format
+     * @param vars the variables (columns) to write
+     * @param channel the destination
+     * @param bufferSize the size of the (heap) output buffer in bytes
+     * @param uriCacheSize the maximum number of encoded URIs to cache (0 disables the cache)
+     */
+    public ResultWriter(Format format, List<String> vars, WritableByteChannel channel, int bufferSize, final int uriCacheSize) {
+        this(format, vars, channel, ByteBuffer.allocate(bufferSize), uriCacheSize);
+    }
+
+    /**
+     * Create a writer that encodes into a buffer owned by the caller. The buffer is cleared first and is in use
+     * until the writer is closed; it may then be reused for another writer.
+     * @param format the output format
+     * @param vars the variables (columns) to write
+     * @param channel the destination
+     * @param buffer the output buffer (heap or direct)
+     * @param uriCacheSize the maximum number of encoded URIs to cache (0 disables the cache)
+     */
+    public ResultWriter(Format format, List<String> vars, WritableByteChannel channel, ByteBuffer buffer, final int uriCacheSize) {
+        if (buffer.capacity() < 64)
+            throw new IllegalArgumentException("Buffer size must be at least 64 bytes");
+        this.format = Objects.requireNonNull(format);
+        this.channel = Objects.requireNonNull(channel);
+        this.vars = ResultStream.vars(vars);
+        this.buffer = buffer;
+        buffer.clear();
+        this.uriCache = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > uriCacheSize;
+            }
+        };
+        this.jsonNames = new byte[this.vars.length][];
+        writeHeader();
+    }
+
+    /**
+     * Create a writer with default buffer and URI cache sizes
+     * @param format the output format
+     * @param vars the variables (columns) to write
+     * @param channel the destination
+     * @return a new writer, having written the header
+     */
+    public static ResultWriter create(Format format, List<String> vars, WritableByteChannel channel) {
+        return new ResultWriter(format, vars, channel, DEFAULT_BUFFER_SIZE, DEFAULT_URI_CACHE_SIZE);
+    }
+
+    /**
+     * Create a writer with default buffer and URI cache sizes
+     * @param format the output format
+     * @param vars the variables (columns) to write
+     * @param out the destination
+     * @return a new writer, having written the header
+     */
+    public static ResultWriter create(Format format, List<String> vars, OutputStream out) {
+        return create(format, vars, Channels.newChannel(out));
+    }
+
+    /**
+     * Write an entire result set as a complete document
+     * @param resultSet the results
+     * @param format the output format
+     * @param out the destination (not closed)
+     * @return the number of rows written
+     */
+    public static long write(ResultSet resultSet, Format format, OutputStream out) {
+        try(ResultWriter writer = create(format, resultSet.getResultVars(), out)) {
+            return writer.write(resultSet);
+        }
+    }
+
+    /**
+     * Write one row
+     * @param binding the row
+     * @throws UncheckedIOException if the channel fails
+     */
+    public void write(Binding binding) {
+        if (finished)
+            throw new IllegalStateException("Writer is closed");
+        switch (format) {
+            case CSV:
+            case TSV:
+                for (int i = 0; i < vars.length; i++) {
+                    if (i > 0) {
+                        put(format == Format.CSV ? (byte) ',' : (byte) '\t');
+                    }
+                    Node node = binding.get(vars[i]);
+                    if (node != null) {
+                        if (format == Format.CSV) {
+                            writeCSV(node);
+                        } else {
+                            writeTSV(node);
+                        }
+                    }
+                }
+                if (format == Format.CSV) {
+                    put(CRLF);
+                } else {
+                    put((byte) '\n');
+                }
+                break;
+            case JSON:
+                if (rows > 0) {
+                    put((byte) ',');
+                }
+                put((byte) '{');
+                boolean first = true;
+                for (int i = 0; i < vars.length; i++) {
+                    Node node = binding.get(vars[i]);
+                    if (node != null) {
+                        if (!first) {
+                            put((byte) ',');
+                        }
+                        first = false;
+                        put(jsonNames[i]);
+                        writeJSON(node);
+                    }
+                }
+                put((byte) '}');
+                break;
+        }
+        rows++;
+    }
+
+    /**
+     * Write all the remaining rows of a result set
+     * @param resultSet the results
+     * @return the number of rows written
+     */
+    public long write(ResultSet resultSet) {
+        return write(ResultStream.bindings(resultSet));
+    }
+
+    /**
+     * Write all the remaining rows from an iterator
+     * @param bindings the rows
+     * @return the number of rows written
+     */
+    public long write(Iterator<Binding> bindings) {
+        long count = 0;
+        while (bindings.hasNext()) {
+            write(bindings.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write a stream of rows (in encounter order)
+     * @param bindings the rows
+     * @return the number of rows written
+     */
+    public long write(Stream<Binding> bindings) {
+        return write(bindings.iterator());
+    }
+
+    /**
+     * @return the number of rows written so far
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Write any buffered bytes to the channel
+     * @throws UncheckedIOException if the channel fails
+     */
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Complete the document (e.g. the closing JSON brackets) and flush. The channel is left open.
+     */
+    @Override
+    public void close() {
+        if (!finished) {
+            finished = true;
+            if (format == Format.JSON) {
+                put(JSON_CLOSE);
+            }
+            flush();
+        }
+    }
+
+    private void writeHeader() {
+        switch (format) {
+            case CSV:
+            case TSV:
+                for (int i = 0; i < vars.length; i++) {
+                    if (i > 0) {
+                        put(format == Format.CSV ? (byte) ',' : (byte) '\t');
+                    }
+                    if (format == Format.TSV) {
+                        put((byte) '?');
+                    }
+                    putString(vars[i].getVarName(), format == Format.CSV ? Escape.CSV : Escape.NONE);
+                }
+                if (format == Format.CSV) {
+                    put(CRLF);
+                } else {
+                    put((byte) '\n');
+                }
+                break;
+            case JSON:
+                put(ascii("{\"head\":{\"vars\":["));
+                for (int i = 0; i < vars.length; i++) {
+                    if (i > 0) {
+                        put((byte) ',');
+                    }
+                    put((byte) '"');
+                    putString(vars[i].getVarName(), Escape.JSON);
+                    put((byte) '"');
+                    jsonNames[i] = ("\"" + vars[i].getVarName() + "\":").getBytes(StandardCharsets.UTF_8);
+                }
+                put(JSON_OPEN_ROWS);
+                break;
+        }
+    }
+
+    private void writeCSV(Node node) {
+        if (node.isURI()) {
+            putURI(node.getURI());
+        }
+        else if (node.isLiteral()) {
+            putString(node.getLiteralLexicalForm(), Escape.CSV);
+        }
+        else if (node.isBlank()) {
+            put((byte) '_');
+            put((byte) ':');
+            putString(node.getBlankNodeLabel(), Escape.NONE);
+        }
+        else {
+            putString(node.toString(), Escape.CSV);
+        }
+    }
+
+    private void writeTSV(Node node) {
+        if (node.isURI()) {
+            putURI(node.getURI());
+        }
+        else if (node.isLiteral()) {
+            put((byte) '"');
+            putString(node.getLiteralLexicalForm(), Escape.TSV);
+            put((byte) '"');
+            String lang = node.getLiteralLanguage();
+            String datatype = node.getLiteralDatatypeURI();
+            if (lang != null && !lang.isEmpty()) {
+                put((byte) '@');
+                putString(lang, Escape.NONE);
+            }
+            else if (datatype != null && !XSDDatatype.XSDstring.getURI().equals(datatype)) {
+                put((byte) '^');
+                put((byte) '^');
+                putURI(datatype);
+            }
+        }
+        else if (node.isBlank()) {
+            put((byte) '_');
+            put((byte) ':');
+            putString(node.getBlankNodeLabel(), Escape.NONE);
+        }
+        else {
+            putString(node.toString(), Escape.TSV);
+        }
+    }
+
+    private void writeJSON(Node node) {
+        if (node.isURI()) {
+            putURI(node.getURI());
+        }
+        else if (node.isLiteral()) {
+            put(JSON_LITERAL);
+            putString(node.getLiteralLexicalForm(), Escape.JSON);
+            String lang = node.getLiteralLanguage();
+            String datatype = node.getLiteralDatatypeURI();
+            if (lang != null && !lang.isEmpty()) {
+                put(JSON_LANG);
+                putString(lang, Escape.JSON);
+            }
+            else if (datatype != null && !XSDDatatype.XSDstring.getURI().equals(datatype)) {
+                put(JSON_DATATYPE);
+                putString(datatype, Escape.JSON);
+            }
+            put((byte) '"');
+            put((byte) '}');
+        }
+        else if (node.isBlank()) {
+            put(JSON_BNODE);
+            putString(node.getBlankNodeLabel(), Escape.JSON);
+            put((byte) '"');
+            put((byte) '}');
+        }
+        else {
+            throw new IllegalArgumentException("Cannot write node as JSON: " + node);
+        }
+    }
+
+    /**
+     * Write a URI in the form for this format (i.e. &lt;uri&gt; in TSV, a JSON object in JSON), using the cached
+     * bytes if it has been written recently.
+     */
+    private void putURI(String uri) {
+        byte[] cached = uriCache.get(uri);
+        if (cached != null) {
+            put(cached);
+            return;
+        }
+        // worst case 6 bytes per char (JSON \\u escapes) plus the wrapping
+        int worstCase = uri.length() * 6 + JSON_URI.length + 2;
+        boolean cache = uri.length() <= MAX_CACHED_URI && worstCase <= buffer.capacity();
+        if (cache && buffer.remaining() < worstCase) {
+            flush();
+        }
+        int start = buffer.position();
+        switch (format) {
+            case CSV:
+                putString(uri, Escape.CSV);
+                break;
+            case TSV:
+                put((byte) '<');
+                putString(uri, Escape.NONE);
+                put((byte) '>');
+                break;
+            case JSON:
+                put(JSON_URI);
+                putString(uri, Escape.JSON);
+                put((byte) '"');
+                put((byte) '}');
+                break;
+        }
+        if (cache) {
+            // the encoded bytes fitted in the buffer without a flush, so copy them out
+            ByteBuffer encoded = buffer.duplicate();
+            encoded.flip();
+            encoded.position(start);
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            uriCache.put(uri, bytes);
+        }
+    }
+
+    private enum Escape { NONE, CSV, TSV, JSON }
+
+    private void putString(String s, Escape escape) {
+        boolean quote = escape == Escape.CSV && needsQuotes(s);
+        if (quote) {
+            put((byte) '"');
+        }
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (buffer.remaining() < 6) {
+                flush();
+            }
+            if (c < 0x80) {
+                switch (escape) {
+                    case CSV:
+                        if (c == '"') {
+                            buffer.put((byte) '"');
+                        }
+                        break;
+                    case TSV:
+                        if (c == '"' || c == '\\') {
+                            buffer.put((byte) '\\');
+                        } else if (c == '\t' || c == '\n' || c == '\r') {
+                            buffer.put((byte) '\\');
+                            c = c == '\t' ? 't' : c == '\n' ? 'n' : 'r';
+                        }
+                        break;
+                    case JSON:
+                        if (c == '"' || c == '\\') {
+                            buffer.put((byte) '\\');
+                        } else if (c < 0x20) {
+                            putControl(c);
+                            continue;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            }
+            else if (Character.isSurrogate(c)) {
+                // unpaired surrogate: not representable in UTF-8
+                buffer.put((byte) '?');
+            }
+            else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        if (quote) {
+            put((byte) '"');
+        }
+    }
+
+    private void putControl(char c) {
+        buffer.put((byte) '\\');
+        switch (c) {
+            case '\n': buffer.put((byte) 'n'); break;
+            case '\r': buffer.put((byte) 'r'); break;
+            case '\t': buffer.put((byte) 't'); break;
+            case '\b': buffer.put((byte) 'b'); break;
+            case '\f': buffer.put((byte) 'f'); break;
+            default:
+                buffer.put((byte) 'u');
+                buffer.put((byte) '0');
+                buffer.put((byte) '0');
+                buffer.put((byte) Character.forDigit(c >> 4, 16));
+                buffer.put((byte) Character.forDigit(c & 0xF, 16));
+        }
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == ',' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(byte b) {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,331 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.NodeNumbers;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.ModelUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Maps result rows ({@link Binding}s) onto instances of a Java class. A binder is compiled once for a list of
+ * result variables and a target class: the position of each variable, the member it is written to and the
+ * conversion from {@link Node} to the member type are all resolved up front into {@link MethodHandle}s,
+ * so binding a row involves no reflection or name lookups.
+ *
+ * The target class needs a no-argument constructor (of any visibility). Each result variable is bound to a
+ * setter method <code>setName(X)</code> or (failing that) a field called <code>name</code>, where X is one of:
+ * <ul>
+ *     <li>{@link Node}, {@link RDFNode}, {@link Resource} or {@link Literal}</li>
+ *     <li>{@link String} - the URI, literal lexical form or blank node label</li>
+ *     <li><code>int</code>, <code>long</code>, <code>float</code>, <code>double</code>, <code>boolean</code>
+ *     (or their boxed equivalents) - parsed from the literal lexical form</li>
+ * </ul>
+ * Variables with no matching member are ignored, as are unbound values (the member keeps its initial value).
+ * If a setter is overloaded, the overload taking a {@link Node} (the value as bound) is used, otherwise the only
+ * overload taking a supported type; a setter with several supported overloads and none taking a {@link Node} is
+ * ambiguous and cannot be bound.
+ *
+ * Binders compiled by {@link #of(List, Class)} are cached against the target class (in a {@link ClassValue}, so
+ * the cache does not keep the class or its class loader alive), up to {@value #MAX_CACHED} variable lists per class.
+ *
+ * @param <T> the type of object created for each row
+ */
+public class RowBinder<T> implements Function<Binding, T> {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(RowBinder.class);
+
+    /** The most variable lists a binder is cached for, per class */
+    private static final int MAX_CACHED = 64;
+
+    /** Previously compiled binders for each class, by variable list */
+    private static final ClassValue<Map<List<String>, RowBinder<?>>> CACHE = new ClassValue<Map<List<String>, RowBinder<?>>>() {
+        @Override
+        protected Map<List<String>, RowBinder<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /** Converters from a node to each supported member type */
+    private static final Map<Class<?>, MethodHandle> CONVERTERS = new HashMap<>();
+
+    /** (Object, Node)void */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Node.class);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CONVERTERS.put(Node.class, MethodHandles.identity(Node.class));
+            converter(lookup, "asRDFNode", RDFNode.class);
+            converter(lookup, "asResource", Resource.class);
+            converter(lookup, "asLiteral", Literal.class);
+            converter(lookup, "asString", String.class);
+            converter(lookup, "asInt", int.class, Integer.class);
+            converter(lookup, "asLong", long.class, Long.class);
+            converter(lookup, "asFloat", float.class, Float.class);
+            converter(lookup, "asDouble", double.class, Double.class);
+            converter(lookup, "asBoolean", boolean.class, Boolean.class);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<T> type;
+    private final List<String> resultVars;
+    private final MethodHandle constructor;
+    private final Var[] vars;
+    private final MethodHandle[] setters;
+
+    private RowBinder(Class<T> type, List<String> resultVars, MethodHandle constructor, Var[] vars, MethodHandle[] setters) {
+        this.type = type;
+        this.resultVars = resultVars;
+        this.constructor = constructor;
+        this.vars = vars;
+        this.setters = setters;
+    }
+
+    /**
+     * Get a binder for the given result variables and type, compiling it if it has not been used before
+     * (binders for more than {@value #MAX_CACHED} variable lists of one type are compiled but not cached).
+     * @param resultVars the variables of the results to be bound (e.g. {@link org.apache.jena.query.ResultSet#getResultVars()})
+     * @param type the class to create for each row
+     * @param <T> the type to create
+     * @return the binder
+     * @throws IllegalArgumentException if the type cannot be bound (e.g. no no-arg constructor, unsupported member type)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowBinder<T> of(List<String> resultVars, Class<T> type) {
+        Map<List<String>, RowBinder<?>> cache = CACHE.get(type);
+        RowBinder<?> binder = cache.get(resultVars);
+        if (binder == null) {
+            binder = compile(resultVars, type);
+            if (cache.size() < MAX_CACHED) {
+                RowBinder<?> existing = cache.putIfAbsent(binder.getResultVars(), binder);
+                if (existing != null) {
+                    binder = existing;
+                }
+            }
+        }
+        return (RowBinder<T>) binder;
+    }
+
+    /**
+     * Compile a new binder for the given result variables and type.
+     * @param resultVars the variables of the results to be bound
+     * @param type the class to create for each row
+     * @param <T> the type to create
+     * @return the binder
+     * @throws IllegalArgumentException if the type cannot be bound (e.g. no no-arg constructor, unsupported member type)
+     */
+    public static <T> RowBinder<T> compile(List<String> resultVars, Class<T> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            MethodHandle constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+
+            List<Var> vars = new ArrayList<>();
+            List<MethodHandle> setters = new ArrayList<>();
+            for (String name : resultVars) {
+                MethodHandle setter = setter(lookup, type, name);
+                if (setter != null) {
+                    vars.add(Var.alloc(name));
+                    setters.add(setter);
+                }
+                else {
+                    LOG.debug("No member for variable '" + name + "' in " + type.getName());
+                }
+            }
+            return new RowBinder<>(type, Collections.unmodifiableList(new ArrayList<>(resultVars)), constructor,
+                    vars.toArray(new Var[0]), setters.toArray(new MethodHandle[0]));
+        }
+        catch(NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no no-argument constructor", e);
+        }
+        catch(IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access " + type.getName(), e);
+        }
+    }
+
+    /**
+     * @return the class created by this binder
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return the result variables this binder was compiled for
+     */
+    public List<String> getResultVars() {
+        return resultVars;
+    }
+
+    /**
+     * Create a new object from the values of a row
+     * @param binding the row
+     * @return the new object
+     */
+    public T bind(Binding binding) {
+        try {
+            Object result = constructor.invokeExact();
+            for (int i = 0; i < vars.length; i++) {
+                Node node = binding.get(vars[i]);
+                if (node != null) {
+                    setters[i].invokeExact(result, node);
+                }
+            }
+            return type.cast(result);
+        }
+        catch(RuntimeException | Error e) {
+            throw e;
+        }
+        catch(Throwable t) {
+            throw new IllegalStateException("Unable to bind " + type.getName(), t);
+        }
+    }
+
+    /**
+     * Same as {@link #bind(Binding)}
+     */
+    @Override
+    public T apply(Binding binding) {
+        return bind(binding);
+    }
+
+    /**
+     * Find a setter method or field for a variable and combine it with a converter for its type
+     * @return a (Object, Node)void handle or null if there is no member for the variable
+     */
+    private static MethodHandle setter(MethodHandles.Lookup lookup, Class<?> type, String name) throws IllegalAccessException {
+        Method method = setterMethod(type, name);
+        if (method != null) {
+            return adapt(lookup.unreflect(method), method.getParameterTypes()[0], type, name);
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                    field.setAccessible(true);
+                    return adapt(lookup.unreflectSetter(field), field.getType(), type, name);
+                }
+            }
+            catch(NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Choose the setter method for a variable, independent of the order of {@link Class#getMethods()}
+     * @return the setter, or null if there is none
+     * @throws IllegalArgumentException if the setter has several supported overloads and none takes a {@link Node}
+     */
+    private static Method setterMethod(Class<?> type, String name) {
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        List<Method> candidates = new ArrayList<>();
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(setterName) && method.getParameterCount() == 1
+                    && !Modifier.isStatic(method.getModifiers()) && !method.isBridge()) {
+                candidates.add(method);
+            }
+        }
+        if (candidates.size() <= 1) {
+            // a single unsupported overload is reported by adapt
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        List<Method> supported = new ArrayList<>();
+        for (Method method : candidates) {
+            Class<?> parameterType = method.getParameterTypes()[0];
+            if (parameterType == Node.class) {
+                return method;
+            }
+            if (CONVERTERS.containsKey(parameterType)) {
+                supported.add(method);
+            }
+        }
+        if (supported.size() == 1) {
+            return supported.get(0);
+        }
+        throw new IllegalArgumentException("Ambiguous setter " + setterName + " for '" + name + "' in " + type.getName()
+                + ": " + candidates);
+    }
+
+    private static MethodHandle adapt(MethodHandle setter, Class<?> memberType, Class<?> type, String name) {
+        MethodHandle converter = CONVERTERS.get(memberType);
+        if (converter == null) {
+            throw new IllegalArgumentException("Unsupported type " + memberType.getName() + " for '" + name + "' in " + type.getName());
+        }
+        converter = converter.asType(MethodType.methodType(memberType, Node.class));
+        return MethodHandles.filterArguments(setter, 1, converter).asType(SETTER_TYPE);
+    }
+
+    private static void converter(MethodHandles.Lookup lookup, String method, Class<?> returnType, Class<?>... alsoFor)
+            throws ReflectiveOperationException {
+        MethodHandle handle = lookup.findStatic(RowBinder.class, method, MethodType.methodType(returnType, Node.class));
+        CONVERTERS.put(returnType, handle);
+        for (Class<?> other : alsoFor) {
+            CONVERTERS.put(other, handle);
+        }
+    }
+
+    private static RDFNode asRDFNode(Node node) {
+        return ModelUtils.convertGraphNodeToRDFNode(node);
+    }
+
+    private static Resource asResource(Node node) {
+        return asRDFNode(node).asResource();
+    }
+
+    private static Literal asLiteral(Node node) {
+        return asRDFNode(node).asLiteral();
+    }
+
+    private static String asString(Node node) {
+        if (node.isURI()) {
+            return node.getURI();
+        }
+        if (node.isLiteral()) {
+            return node.getLiteralLexicalForm();
+        }
+        if (node.isBlank()) {
+            return node.getBlankNodeLabel();
+        }
+        return node.toString();
+    }
+
+    private static int asInt(Node node) {
+        return NodeNumbers.parseInt(node);
+    }
+
+    private static long asLong(Node node) {
+        return NodeNumbers.parseLong(node);
+    }
+
+    private static float asFloat(Node node) {
+        return (float) NodeNumbers.parseDouble(node);
+    }
+
+    private static double asDouble(Node node) {
+        return NodeNumbers.parseDouble(node);
+    }
+
+    private static boolean asBoolean(Node node) {
+        String lex = asString(node).trim();
+        return "true".equals(lex) || "1".equals(lex);
+    }
+}
@@ -0,0 +1,278 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.MappedWindow;
+import com.asteroid.duck.jena.util.impl.NodeCodec;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.ResultBinding;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ResultSetRewindable} copy of a result set that works within a fixed heap budget, as an alternative to
+ * {@link org.apache.jena.query.ResultSetFactory#copyResults(ResultSet)} for very large results.
+ *
+ * The first N rows are held in memory; the rest are spilled to a temporary file in a compact binary format
+ * (see {@link NodeCodec}) with a second file of row offsets. Both are read back through memory mapping, so they
+ * support exact size, {@link #reset() rewind} and random access by row index ({@link #getBinding(long)}).
+ *
+ * Instances should be {@link #close() closed} to delete the temporary files.
+ */
+public class SpillingResultSet implements ResultSetRewindable, AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(SpillingResultSet.class);
+
+    private final List<String> resultVars;
+    private final Var[] vars;
+    private final Model model;
+    private final List<Binding> memory;
+    private final long rowCount;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private MappedWindow data;
+    private MappedWindow index;
+
+    private long position = 0;
+
+    /**
+     * Copy the (remaining) rows of a result set, spilling to the default temporary directory.
+     * @param source the results to copy (this is consumed)
+     * @param memoryRows the maximum number of rows to hold in memory
+     * @return the copy
+     * @throws UncheckedIOException if the temporary files cannot be written
+     */
+    public static SpillingResultSet copy(ResultSet source, int memoryRows) {
+        return copy(source, memoryRows, null);
+    }
+
+    /**
+     * Copy the (remaining) rows of a result set.
+     * @param source the results to copy (this is consumed)
+     * @param memoryRows the maximum number of rows to hold in memory
+     * @param directory where to create the temporary files (null for the default temporary directory)
+     * @return the copy
+     * @throws UncheckedIOException if the temporary files cannot be written
+     */
+    public static SpillingResultSet copy(ResultSet source, int memoryRows, Path directory) {
+        try {
+            return new SpillingResultSet(source, memoryRows, directory);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Unable to spill results to disk", e);
+        }
+    }
+
+    private SpillingResultSet(ResultSet source, int memoryRows, Path directory) throws IOException {
+        this.resultVars = Collections.unmodifiableList(new ArrayList<>(source.getResultVars()));
+        this.vars = ResultStream.vars(resultVars);
+        this.model = source.getResourceModel();
+        this.memory = new ArrayList<>(Math.min(memoryRows, 1024));
+
+        long count = 0;
+        while (count < memoryRows && source.hasNext()) {
+            memory.add(source.nextBinding());
+            count++;
+        }
+        if (source.hasNext()) {
+            dataFile = directory == null ? Files.createTempFile("results", ".dat") : Files.createTempFile(directory, "results", ".dat");
+            try {
+                indexFile = directory == null ? Files.createTempFile("results", ".idx") : Files.createTempFile(directory, "results", ".idx");
+                try (CountingOutputStream dataBytes = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16));
+                     DataOutputStream dataOut = new DataOutputStream(dataBytes);
+                     DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+                    while (source.hasNext()) {
+                        indexOut.writeLong(dataBytes.count);
+                        NodeCodec.writeRow(dataOut, source.nextBinding(), vars);
+                        count++;
+                    }
+                }
+                dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+                indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+                data = new MappedWindow(dataChannel, MappedWindow.DEFAULT_WINDOW);
+                index = new MappedWindow(indexChannel, MappedWindow.DEFAULT_WINDOW);
+            }
+            catch(IOException | RuntimeException e) {
+                // closes any channel opened and deletes both files
+                close();
+                throw e;
+            }
+            LOG.debug("Spilled " + (count - memory.size()) + " rows to " + dataFile);
+        }
+        else {
+            dataFile = null;
+            indexFile = null;
+        }
+        this.rowCount = count;
+    }
+
+    /**
+     * @return the exact number of rows (may exceed {@link #size()} which is limited to an int)
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of rows held on disk
+     */
+    public long spilledRows() {
+        return rowCount - memory.size();
+    }
+
+    /**
+     * Random access to a row
+     * @param row the row index (0 based)
+     * @return the binding for the row
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public Binding getBinding(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        if (row < memory.size()) {
+            return memory.get((int) row);
+        }
+        if (data == null) {
+            throw new IllegalStateException("Result set has been closed");
+        }
+        long spilled = row - memory.size();
+        long start = index.getLong(spilled * Long.BYTES);
+        long end = spilled + 1 < spilledRows() ? index.getLong((spilled + 1) * Long.BYTES) : data.length();
+        return NodeCodec.readRow(data.at(start, (int) (end - start)), vars);
+    }
+
+    /**
+     * Random access to a row
+     * @param row the row index (0 based)
+     * @return the solution for the row
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public QuerySolution getSolution(long row) {
+        return new ResultBinding(model, getBinding(row));
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(rowCount, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < rowCount;
+    }
+
+    @Override
+    public QuerySolution next() {
+        return nextSolution();
+    }
+
+    @Override
+    public QuerySolution nextSolution() {
+        return new ResultBinding(model, nextBinding());
+    }
+
+    @Override
+    public Binding nextBinding() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return getBinding(position++);
+    }
+
+    @Override
+    public int getRowNumber() {
+        return (int) Math.min(position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<String> getResultVars() {
+        return resultVars;
+    }
+
+    @Override
+    public Model getResourceModel() {
+        return model;
+    }
+
+    /**
+     * Release the temporary files. Rows held in memory remain readable.
+     */
+    @Override
+    public void close() {
+        data = null;
+        index = null;
+        closeQuietly(dataChannel);
+        closeQuietly(indexChannel);
+        deleteFiles();
+    }
+
+    private void deleteFiles() {
+        for (Path file : new Path[] {dataFile, indexFile}) {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                }
+                catch(IOException e) {
+                    LOG.warn("Unable to delete " + file, e);
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch(IOException e) {
+                LOG.warn("Unable to close", e);
+            }
+        }
+    }
+
+    /**
+     * Tracks the offset of each row in the data file
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -3,13 +3,21 @@
  */
 package com.asteroid.duck.jena.util;
 
+import com.asteroid.duck.jena.util.impl.BatchSpliterator;
+import com.asteroid.duck.jena.util.impl.ClosingIterator;
 import org.apache.jena.rdf.model.*;
 
 import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Utilities to move from Model iteration operations into (non-parralel) streams
+ * Utilities to move from Model iteration operations into (non-parralel) streams.
+ *
+ * Streams are lazy: statements are pulled from the iterator as they are consumed (in growing batches when a
+ * parallel stream splits), so short-circuiting operations like <code>limit</code> or <code>findFirst</code> read
+ * only what they need. The iterator is closed when it is exhausted or the stream is closed, so streams that may
+ * not be fully consumed should be closed (e.g. with try-with-resources).
  */
 public class StatementStream {
 
@@ -19,11 +27,21 @@ public class StatementStream {
      * @return a stream of statements
      */
     public static Stream<Statement> from(StmtIterator iterator) {
-        return iterator.toList().parallelStream();
+        return stream(iterator, true);
     }
 
+    /**
+     * Given a statement iterator from a model - provide a sequential stream of statements
+     * @param iterator the iterator
+     * @return a stream of statements
+     */
     public static Stream<Statement> fromSeq(StmtIterator iterator) {
-        return iterator.toList().stream();
+        return stream(iterator, false);
+    }
+
+    private static Stream<Statement> stream(final StmtIterator iterator, final boolean parallel) {
+        return StreamSupport.stream(new BatchSpliterator<>(new ClosingIterator<>(iterator, iterator::close)), parallel)
+                .onClose(iterator::close);
     }
 
     public static Stream<Statement> on(Model m, Resource subject, Property predicate, Resource object) {
@@ -47,6 +65,41 @@ public class StatementStream {
         return statement.getObject();
     }
 
+    /**
+     * Map statements to the URIs of their subjects, sharing equal URIs via a pool. Blank node subjects are dropped.
+     * @param statements the statements
+     * @param pool the pool used to intern the URIs
+     * @return a stream of subject URIs
+     */
+    public static Stream<String> subjectURIs(Stream<Statement> statements, InternPool<String> pool) {
+        return statements.map(StatementStream::subject)
+                .filter(Resource::isURIResource)
+                .map(subject -> pool.intern(subject.getURI()));
+    }
+
+    /**
+     * Map statements to the URIs of their predicates, sharing equal URIs via a pool.
+     * @param statements the statements
+     * @param pool the pool used to intern the URIs
+     * @return a stream of predicate URIs
+     */
+    public static Stream<String> predicateURIs(Stream<Statement> statements, InternPool<String> pool) {
+        return statements.map(statement -> pool.intern(statement.getPredicate().getURI()));
+    }
+
+    /**
+     * Map statements to the URIs of their objects, sharing equal URIs via a pool. Literal and blank node objects
+     * are dropped.
+     * @param statements the statements
+     * @param pool the pool used to intern the URIs
+     * @return a stream of object URIs
+     */
+    public static Stream<String> objectURIs(Stream<Statement> statements, InternPool<String> pool) {
+        return statements.map(StatementStream::object)
+                .filter(RDFNode::isURIResource)
+                .map(object -> pool.intern(object.asResource().getURI()));
+    }
+
     public static final Predicate<Statement> HAS_RESOURCE_OBJECT = ((Statement s) -> s.getObject().isResource());
 
     public static Resource objectResource(Statement statement) {
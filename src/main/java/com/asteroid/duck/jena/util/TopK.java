@@ -0,0 +1,82 @@
+package com.asteroid.duck.jena.util;
+
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * Streaming "top K" {@link Collector}s: the K greatest elements of a stream in O(K) memory and O(n log K) time,
+ * instead of sorting the whole stream. Parallel streams keep a bounded heap per thread and merge them.
+ *
+ * <pre>
+ * List&lt;Binding&gt; heaviest = ResultStream.streamBindings(resultSet)
+ *         .collect(TopK.largest(100, NodeComparators.byVariable("weight", NodeComparators.numeric())));
+ * </pre>
+ */
+public class TopK {
+
+    /**
+     * Collect the K largest elements
+     * @param k the number of elements to keep
+     * @param order the order of elements
+     * @param <T> the element type
+     * @return a collector producing a list of (at most) K elements, largest first
+     */
+    public static <T> Collector<T, ?, List<T>> largest(int k, Comparator<? super T> order) {
+        if (k < 0)
+            throw new IllegalArgumentException("K cannot be negative");
+        return Collector.of(
+                () -> new Heap<T>(k, order),
+                Heap::add,
+                Heap::merge,
+                Heap::toList);
+    }
+
+    /**
+     * Collect the K smallest elements
+     * @param k the number of elements to keep
+     * @param order the order of elements
+     * @param <T> the element type
+     * @return a collector producing a list of (at most) K elements, smallest first
+     */
+    public static <T> Collector<T, ?, List<T>> smallest(int k, Comparator<? super T> order) {
+        return largest(k, Collections.reverseOrder(order));
+    }
+
+    /**
+     * A bounded min-heap: the root is the smallest of the elements kept so far, and so the first to go
+     */
+    private static class Heap<T> {
+        private final int k;
+        private final Comparator<? super T> order;
+        private final PriorityQueue<T> queue;
+
+        private Heap(int k, Comparator<? super T> order) {
+            this.k = k;
+            this.order = order;
+            this.queue = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), order);
+        }
+
+        private void add(T element) {
+            if (queue.size() < k) {
+                queue.add(element);
+            }
+            else if (k > 0 && order.compare(element, queue.peek()) > 0) {
+                queue.poll();
+                queue.add(element);
+            }
+        }
+
+        private Heap<T> merge(Heap<T> other) {
+            for (T element : other.queue) {
+                add(element);
+            }
+            return this;
+        }
+
+        private List<T> toList() {
+            List<T> result = new ArrayList<>(queue);
+            result.sort(Collections.reverseOrder(order));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Transitive closures (e.g. of <code>test:child</code> or <code>rdfs:subClassOf</code>) from many seeds at once,
+ * over a {@link CsrGraph} projection.
+ *
+ * Seeds are traversed 64 at a time by a level-synchronous breadth first search: each node has a 64 bit mask of
+ * the seeds that have reached it (a concurrent visited bitmap in an {@link AtomicLongArray}), so a subgraph shared
+ * by several seeds is walked once per level for all of them rather than once per seed. Each level's frontier is
+ * expanded in parallel (on the common fork-join pool) when it is large enough to be worth it. Masks only gain bits,
+ * so cycles are safe: a node is expanded for a seed at most once.
+ * <pre>
+ * TransitiveClosure.over(model, childProperty)
+ *         .maxDepth(3)
+ *         .pairs(seeds)
+ *         .forEach(pair -&gt; ...); // (seed, reachable) pairs
+ * </pre>
+ * A node is reachable from a seed by one or more hops, so a seed is only paired with itself when it is on a cycle.
+ */
+public class TransitiveClosure {
+    /** Frontiers smaller than this are expanded on the calling thread */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+    private final CsrGraph graph;
+    private CsrGraph.Direction direction = CsrGraph.Direction.FORWARD;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    /** traversal state, reused between batches (and by concurrent batches of a parallel stream) */
+    private final Queue<Traversal> traversals = new ConcurrentLinkedQueue<>();
+
+    private TransitiveClosure(CsrGraph graph) {
+        this.graph = Objects.requireNonNull(graph);
+    }
+
+    /**
+     * @param graph the projection to traverse
+     * @return the closure engine
+     */
+    public static TransitiveClosure over(CsrGraph graph) {
+        return new TransitiveClosure(graph);
+    }
+
+    /**
+     * @param model the model
+     * @param properties the properties to follow (from subject to object)
+     * @return the closure engine
+     */
+    public static TransitiveClosure over(Model model, Property... properties) {
+        return new TransitiveClosure(CsrGraph.build(model, properties));
+    }
+
+    /**
+     * @param direction the direction to follow the edges: {@link CsrGraph.Direction#REVERSE} from object to subject
+     * @return this engine
+     */
+    public TransitiveClosure direction(CsrGraph.Direction direction) {
+        this.direction = Objects.requireNonNull(direction);
+        return this;
+    }
+
+    /**
+     * @param maxDepth the maximum number of hops from a seed (at least 1)
+     * @return this engine
+     */
+    public TransitiveClosure maxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Max depth must be at least 1");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param parallelThreshold the smallest frontier expanded in parallel
+     * @return this engine
+     */
+    public TransitiveClosure parallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1)
+            throw new IllegalArgumentException("Parallel threshold must be at least 1");
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * The closure from some seeds. Each batch of 64 seeds is traversed when the stream reaches it, and its pairs
+     * are grouped by seed (in the order given).
+     * @param seeds the nodes to start from (those not in the graph have no pairs)
+     * @return (seed, reachable) pairs
+     */
+    public Stream<Map.Entry<Node, Node>> pairs(Collection<Node> seeds) {
+        final int[] ids = seeds.stream()
+                .mapToInt(graph::id)
+                .filter(id -> id != CsrGraph.NONE)
+                .toArray();
+        return IntStream.range(0, (ids.length + 63) / 64)
+                .boxed()
+                .flatMap(batch -> {
+                    int[] batchSeeds = Arrays.copyOfRange(ids, batch * 64, Math.min(ids.length, batch * 64 + 64));
+                    int[][] reached = traverse(batchSeeds);
+                    return IntStream.range(0, batchSeeds.length)
+                            .boxed()
+                            .flatMap(bit -> pairs(batchSeeds[bit], reached[bit]));
+                });
+    }
+
+    /**
+     * The full closure: the pairs from every node in the graph
+     * @return (node, reachable) pairs
+     */
+    public Stream<Map.Entry<Node, Node>> pairs() {
+        List<Node> all = new ArrayList<>(graph.nodeCount());
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            all.add(graph.node(i));
+        }
+        return pairs(all);
+    }
+
+    /**
+     * @param seed a node
+     * @return the nodes reachable from it
+     */
+    public List<Node> reachable(Node seed) {
+        List<Node> seeds = new ArrayList<>(1);
+        seeds.add(seed);
+        return pairs(seeds).map(Map.Entry::getValue).collect(Collectors.toList());
+    }
+
+    private Stream<Map.Entry<Node, Node>> pairs(int seed, int[] reached) {
+        final Node seedNode = graph.node(seed);
+        return Arrays.stream(reached)
+                .mapToObj(node -> new AbstractMap.SimpleImmutableEntry<>(seedNode, graph.node(node)));
+    }
+
+    /**
+     * Breadth first search from up to 64 seeds at once
+     * @param seeds the seed IDs; seed <code>i</code> is bit <code>i</code> of the masks
+     * @return for each seed, the IDs of the nodes it reaches (in ascending order)
+     */
+    int[][] traverse(int[] seeds) {
+        Traversal traversal = traversals.poll();
+        if (traversal == null) {
+            traversal = new Traversal(graph.nodeCount());
+        }
+        try {
+            return traversal.run(seeds);
+        }
+        finally {
+            traversals.offer(traversal);
+        }
+    }
+
+    /**
+     * The working state of a traversal, reused by later batches. Only the entries of the nodes reached are
+     * cleared afterwards, so a batch costs time in proportion to the nodes it reaches rather than to the graph.
+     */
+    private final class Traversal {
+        /** the seeds that have reached each node */
+        private final AtomicLongArray visited;
+        /** the seeds newly reaching each node in the next level */
+        private final AtomicLongArray next;
+        /** the seeds newly reaching each frontier node */
+        private final long[] frontier;
+        private int[] frontierNodes;
+        private int[] nextNodes;
+        /** the nodes reached by any seed */
+        private final int[] touched;
+
+        private Traversal(int n) {
+            this.visited = new AtomicLongArray(n);
+            this.next = new AtomicLongArray(n);
+            this.frontier = new long[n];
+            this.frontierNodes = new int[n];
+            this.nextNodes = new int[n];
+            this.touched = new int[n];
+        }
+
+        private int[][] run(int[] seeds) {
+            final int[] offsets = graph.offsets(direction);
+            final int[] targets = graph.targets(direction);
+            final AtomicInteger touchedCount = new AtomicInteger();
+            int size = 0;
+            for (int bit = 0; bit < seeds.length; bit++) {
+                if (frontier[seeds[bit]] == 0) {
+                    frontierNodes[size++] = seeds[bit];
+                }
+                frontier[seeds[bit]] |= 1L << bit;
+            }
+            for (int depth = 1; depth <= maxDepth && size > 0; depth++) {
+                final int[] expanding = frontierNodes;
+                final int[] queued = nextNodes;
+                final AtomicInteger count = new AtomicInteger();
+                IntStream indexes = IntStream.range(0, size);
+                if (size >= parallelThreshold) {
+                    indexes = indexes.parallel();
+                }
+                indexes.forEach(i -> {
+                    int node = expanding[i];
+                    long seedsHere = frontier[node];
+                    for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                        int target = targets[e];
+                        long old = or(visited, target, seedsHere);
+                        if (old == 0) {
+                            touched[touchedCount.getAndIncrement()] = target;
+                        }
+                        long added = seedsHere & ~old;
+                        if (added != 0 && or(next, target, added) == 0) {
+                            queued[count.getAndIncrement()] = target;
+                        }
+                    }
+                });
+                for (int i = 0; i < size; i++) {
+                    frontier[expanding[i]] = 0;
+                }
+                size = count.get();
+                for (int i = 0; i < size; i++) {
+                    frontier[queued[i]] = next.getAndSet(queued[i], 0);
+                }
+                frontierNodes = queued;
+                nextNodes = expanding;
+            }
+            // stopped by the depth limit
+            for (int i = 0; i < size; i++) {
+                frontier[frontierNodes[i]] = 0;
+            }
+
+            // spread the masks of the nodes reached into a list per seed
+            final int reached = touchedCount.get();
+            Arrays.sort(touched, 0, reached);
+            int[] counts = new int[seeds.length];
+            for (int i = 0; i < reached; i++) {
+                for (long mask = visited.get(touched[i]); mask != 0; mask &= mask - 1) {
+                    counts[Long.numberOfTrailingZeros(mask)]++;
+                }
+            }
+            int[][] lists = new int[seeds.length][];
+            for (int bit = 0; bit < seeds.length; bit++) {
+                lists[bit] = new int[counts[bit]];
+                counts[bit] = 0;
+            }
+            for (int i = 0; i < reached; i++) {
+                int node = touched[i];
+                for (long mask = visited.get(node); mask != 0; mask &= mask - 1) {
+                    int bit = Long.numberOfTrailingZeros(mask);
+                    lists[bit][counts[bit]++] = node;
+                }
+                visited.set(node, 0);
+            }
+            return lists;
+        }
+    }
+
+    /**
+     * Atomically set bits
+     * @return the previous value
+     */
+    private static long or(AtomicLongArray array, int i, long bits) {
+        while (true) {
+            long old = array.get(i);
+            if ((old | bits) == old || array.compareAndSet(i, old, old | bits)) {
+                return old;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.BatchSpliterator;
+import com.asteroid.duck.jena.util.impl.ClosingIterator;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The graph level equivalent of {@link StatementStream}: streams of {@link Triple}s (or their {@link Node}s)
+ * straight from {@link Graph#find(Node, Node, Node)}, without wrapping each triple in a
+ * {@link org.apache.jena.rdf.model.Statement} and its resources. Use this for hot scans over large graphs.
+ *
+ * Like {@link StatementStream} the streams are lazy, and the underlying iterator is closed when it is exhausted or
+ * the stream is closed.
+ */
+public class TripleStream {
+
+    /**
+     * Given a triple iterator from a graph - provide a parallel stream of triples
+     * @param iterator the iterator
+     * @return a stream of triples
+     */
+    public static Stream<Triple> from(ExtendedIterator<Triple> iterator) {
+        return stream(iterator, true);
+    }
+
+    /**
+     * Given a triple iterator from a graph - provide a sequential stream of triples
+     * @param iterator the iterator
+     * @return a stream of triples
+     */
+    public static Stream<Triple> fromSeq(ExtendedIterator<Triple> iterator) {
+        return stream(iterator, false);
+    }
+
+    private static Stream<Triple> stream(final ExtendedIterator<Triple> iterator, final boolean parallel) {
+        return StreamSupport.stream(new BatchSpliterator<>(new ClosingIterator<>(iterator, iterator::close)), parallel)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Stream the triples in a graph matching a pattern
+     * @param graph the graph
+     * @param subject the subject to match (null or {@link Node#ANY} for any)
+     * @param predicate the predicate to match (null or {@link Node#ANY} for any)
+     * @param object the object to match (null or {@link Node#ANY} for any)
+     * @return a parallel stream of triples
+     */
+    public static Stream<Triple> on(Graph graph, Node subject, Node predicate, Node object) {
+        return from(graph.find(any(subject), any(predicate), any(object)));
+    }
+
+    /**
+     * Stream the triples in a model's graph matching a pattern, the equivalent of
+     * {@link StatementStream#on(Model, Resource, Property, Resource)}
+     * @param m the model
+     * @param subject the subject to match (null for any)
+     * @param predicate the predicate to match (null for any)
+     * @param object the object to match (null for any)
+     * @return a parallel stream of triples
+     */
+    public static Stream<Triple> on(Model m, Resource subject, Property predicate, RDFNode object) {
+        return on(m.getGraph(), asNode(subject), asNode(predicate), asNode(object));
+    }
+
+    /**
+     * Stream the subjects of the triples in a graph matching a predicate and object (with repeats)
+     * @param graph the graph
+     * @param predicate the predicate to match (null for any)
+     * @param object the object to match (null for any)
+     * @return a parallel stream of subjects
+     */
+    public static Stream<Node> subjects(Graph graph, Node predicate, Node object) {
+        return on(graph, Node.ANY, predicate, object).map(TripleStream::subject);
+    }
+
+    /**
+     * Stream the objects of the triples in a graph matching a subject and predicate
+     * @param graph the graph
+     * @param subject the subject to match (null for any)
+     * @param predicate the predicate to match (null for any)
+     * @return a parallel stream of objects
+     */
+    public static Stream<Node> objects(Graph graph, Node subject, Node predicate) {
+        return on(graph, subject, predicate, Node.ANY).map(TripleStream::object);
+    }
+
+    /**
+     * Extract the subject from a triple. Useful to map to a stream of subjects
+     * @param triple the triple
+     * @return the subject
+     */
+    public static Node subject(Triple triple) {
+        return triple.getSubject();
+    }
+
+    public static Node predicate(Triple triple) {
+        return triple.getPredicate();
+    }
+
+    public static Node object(Triple triple) {
+        return triple.getObject();
+    }
+
+    /**
+     * Map triples to the URIs of their subjects, sharing equal URIs via a pool. Blank node subjects are dropped.
+     * @param triples the triples
+     * @param pool the pool used to intern the URIs
+     * @return a stream of subject URIs
+     */
+    public static Stream<String> subjectURIs(Stream<Triple> triples, InternPool<String> pool) {
+        return triples.map(TripleStream::subject)
+                .filter(Node::isURI)
+                .map(subject -> pool.intern(subject.getURI()));
+    }
+
+    /**
+     * Map triples to the URIs of their objects, sharing equal URIs via a pool. Literal and blank node objects
+     * are dropped.
+     * @param triples the triples
+     * @param pool the pool used to intern the URIs
+     * @return a stream of object URIs
+     */
+    public static Stream<String> objectURIs(Stream<Triple> triples, InternPool<String> pool) {
+        return triples.map(TripleStream::object)
+                .filter(Node::isURI)
+                .map(object -> pool.intern(object.getURI()));
+    }
+
+    /** Triples whose object is a resource (a URI or blank node), as {@link StatementStream#HAS_RESOURCE_OBJECT} */
+    public static final Predicate<Triple> HAS_RESOURCE_OBJECT = ((Triple t) -> t.getObject().isURI() || t.getObject().isBlank());
+
+    /** Triples whose object is a URI */
+    public static final Predicate<Triple> HAS_URI_OBJECT = ((Triple t) -> t.getObject().isURI());
+
+    /** Triples whose object is a literal, as {@link StatementStream#HAS_LITERAL_OBJECT} */
+    public static final Predicate<Triple> HAS_LITERAL_OBJECT = ((Triple t) -> t.getObject().isLiteral());
+
+    private static Node any(Node node) {
+        return node == null ? Node.ANY : node;
+    }
+
+    private static Node asNode(RDFNode node) {
+        return node == null ? Node.ANY : node.asNode();
+    }
+}
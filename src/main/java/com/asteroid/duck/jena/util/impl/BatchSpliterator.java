@@ -0,0 +1,130 @@
+package com.asteroid.duck.jena.util.impl;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over a (single threaded) {@link Iterator} that splits by pulling elements
+ * from the iterator into arrays of growing size. Each split hands an array batch to another thread,
+ * while the iterator itself is only ever touched by the thread that splits or traverses this spliterator.
+ *
+ * This is the same basic strategy as {@link Spliterators#spliteratorUnknownSize(Iterator, int)} but lets the
+ * caller choose the batch sizes and reports {@link #ORDERED} and {@link #NONNULL} along with {@link #SIZED}
+ * when the number of elements remaining is known up front.
+ * @param <T> the element type
+ */
+public class BatchSpliterator<T> implements Spliterator<T> {
+    /** Default size of the first batch handed out by {@link #trySplit()} */
+    public static final int DEFAULT_INITIAL_BATCH = 256;
+    /** Default upper bound on the size of any batch handed out by {@link #trySplit()} */
+    public static final int DEFAULT_MAX_BATCH = 1 << 16;
+
+    private final Iterator<? extends T> iterator;
+    private final int characteristics;
+    private final int maxBatch;
+    private int batch;
+    private long estimate;
+
+    /**
+     * Create a spliterator of unknown size with default batching
+     * @param iterator the source of elements (must not yield nulls)
+     */
+    public BatchSpliterator(Iterator<? extends T> iterator) {
+        this(iterator, -1);
+    }
+
+    /**
+     * Create a spliterator with default batching
+     * @param iterator the source of elements (must not yield nulls)
+     * @param size the exact number of elements remaining in the iterator, or a negative number if unknown
+     */
+    public BatchSpliterator(Iterator<? extends T> iterator, long size) {
+        this(iterator, size, DEFAULT_INITIAL_BATCH, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Create a spliterator
+     * @param iterator the source of elements (must not yield nulls)
+     * @param size the exact number of elements remaining in the iterator, or a negative number if unknown
+     * @param initialBatch the size of the first batch split off
+     * @param maxBatch the largest batch that will be split off (batches double in size up to this)
+     */
+    public BatchSpliterator(Iterator<? extends T> iterator, long size, int initialBatch, int maxBatch) {
+        if (initialBatch < 1 || maxBatch < initialBatch)
+            throw new IllegalArgumentException("Batch sizes must satisfy 1 <= initial <= max");
+        this.iterator = Objects.requireNonNull(iterator);
+        this.batch = initialBatch;
+        this.maxBatch = maxBatch;
+        if (size >= 0) {
+            this.estimate = size;
+            this.characteristics = ORDERED | NONNULL | SIZED | SUBSIZED;
+        } else {
+            this.estimate = Long.MAX_VALUE;
+            this.characteristics = ORDERED | NONNULL;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        if (iterator.hasNext()) {
+            T next = iterator.next();
+            if (hasCharacteristics(SIZED)) {
+                estimate--;
+            }
+            action.accept(next);
+            return true;
+        }
+        estimate = 0;
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        while (iterator.hasNext()) {
+            action.accept(iterator.next());
+        }
+        estimate = 0;
+    }
+
+    /**
+     * Pulls the next batch of elements from the iterator into an array and returns an array backed
+     * spliterator over them. Batches grow geometrically (up to the configured maximum) so that
+     * a large result set is quickly divided across the worker threads of a parallel stream.
+     * @return a spliterator over the next batch, or null if there are no more elements
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+        if (estimate <= 1 || !iterator.hasNext()) {
+            return null;
+        }
+        int n = (int) Math.min(batch, estimate);
+        Object[] array = new Object[n];
+        int count = 0;
+        do {
+            array[count++] = iterator.next();
+        } while (count < n && iterator.hasNext());
+
+        if (hasCharacteristics(SIZED)) {
+            estimate -= count;
+        }
+        if (batch < maxBatch) {
+            batch = Math.min(maxBatch, batch << 1);
+        }
+        return Spliterators.spliterator(array, 0, count, ORDERED | NONNULL);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+}
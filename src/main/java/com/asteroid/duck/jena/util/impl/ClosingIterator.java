@@ -0,0 +1,42 @@
+package com.asteroid.duck.jena.util.impl;
+
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * An {@link Iterator} wrapper that runs an action the first time it is found to be exhausted
+ * (i.e. {@link #hasNext()} returns false), e.g. to close a Jena {@link org.apache.jena.util.iterator.ExtendedIterator}.
+ * @param <T> the element type
+ */
+public class ClosingIterator<T> implements Iterator<T> {
+    private final Iterator<T> delegate;
+    private Runnable onExhausted;
+
+    /**
+     * @param delegate the iterator to wrap
+     * @param onExhausted run (once) when the iterator has no more elements
+     */
+    public ClosingIterator(Iterator<T> delegate, Runnable onExhausted) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.onExhausted = Objects.requireNonNull(onExhausted);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (onExhausted == null) {
+            return false;
+        }
+        boolean hasNext = delegate.hasNext();
+        if (!hasNext) {
+            Runnable action = onExhausted;
+            onExhausted = null;
+            action.run();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        return delegate.next();
+    }
+}
@@ -0,0 +1,71 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link ResultSet} wrapper that runs an action the first time it is found to be exhausted
+ * (i.e. {@link #hasNext()} returns false).
+ */
+public class ClosingResultSet implements ResultSet {
+    private final ResultSet delegate;
+    private Runnable onExhausted;
+
+    /**
+     * @param delegate the result set to wrap
+     * @param onExhausted run (once) when the result set has no more rows
+     */
+    public ClosingResultSet(ResultSet delegate, Runnable onExhausted) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.onExhausted = Objects.requireNonNull(onExhausted);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (onExhausted == null) {
+            return false;
+        }
+        boolean hasNext = delegate.hasNext();
+        if (!hasNext) {
+            Runnable action = onExhausted;
+            onExhausted = null;
+            action.run();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public QuerySolution next() {
+        return delegate.next();
+    }
+
+    @Override
+    public QuerySolution nextSolution() {
+        return delegate.nextSolution();
+    }
+
+    @Override
+    public Binding nextBinding() {
+        return delegate.nextBinding();
+    }
+
+    @Override
+    public int getRowNumber() {
+        return delegate.getRowNumber();
+    }
+
+    @Override
+    public List<String> getResultVars() {
+        return delegate.getResultVars();
+    }
+
+    @Override
+    public Model getResourceModel() {
+        return delegate.getResourceModel();
+    }
+}
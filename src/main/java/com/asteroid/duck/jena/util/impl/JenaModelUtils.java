@@ -20,11 +20,15 @@ public class JenaModelUtils {
 
 
     public static List<Statement> list(StmtIterator iter, int max) {
-        return StatementStream.from(iter).limit(max).collect(Collectors.toList());
+        try (Stream<Statement> statements = StatementStream.fromSeq(iter)) {
+            return statements.limit(max).collect(Collectors.toList());
+        }
     }
 
     public static List<Statement> list(StmtIterator iter) {
-        return StatementStream.from(iter).collect(Collectors.toList());
+        try (Stream<Statement> statements = StatementStream.fromSeq(iter)) {
+            return statements.collect(Collectors.toList());
+        }
     }
 
     public static void dump(Stream<Statement> s, PrintWriter out) {
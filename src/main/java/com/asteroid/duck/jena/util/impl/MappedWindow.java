@@ -0,0 +1,74 @@
+package com.asteroid.duck.jena.util.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only access to a (possibly very large) file through a sliding memory mapped window,
+ * since a single {@link MappedByteBuffer} cannot exceed 2GB.
+ */
+public class MappedWindow {
+    /** Default size of the mapped window */
+    public static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long length;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+
+    /**
+     * @param channel an open channel on the file (the file must not change size while in use)
+     * @param windowSize the size of region mapped at once
+     * @throws IOException if the size of the file cannot be read
+     */
+    public MappedWindow(FileChannel channel, int windowSize) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the length of the file
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Get a buffer positioned at the given offset in the file, with at least <code>count</code> bytes remaining.
+     * The buffer is only valid until the next call.
+     * @param position the offset in the file
+     * @param count the number of bytes that will be read
+     * @return the buffer
+     */
+    public ByteBuffer at(long position, int count) {
+        if (position < 0 || position + count > length) {
+            throw new IndexOutOfBoundsException("Position " + position + " (+" + count + ") outside file of length " + length);
+        }
+        if (window == null || position < windowStart || position + count > windowStart + window.capacity()) {
+            try {
+                long size = Math.min(Math.max(windowSize, count), length - position);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                windowStart = position;
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        window.position((int) (position - windowStart));
+        return window;
+    }
+
+    /**
+     * Read a long from the file
+     * @param position the offset in the file
+     * @return the value
+     */
+    public long getLong(long position) {
+        return at(position, Long.BYTES).getLong();
+    }
+}
@@ -0,0 +1,233 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * A compact binary format for RDF terms ({@link Node}s) and result rows ({@link Binding}s), used when results
+ * are held in byte form (e.g. spilled to disk).
+ *
+ * Each node is a tag byte followed by its strings, each as an int byte length and UTF-8 bytes.
+ * A row is simply the nodes for a fixed list of variables in order (unbound variables are written as
+ * {@link #UNBOUND}).
+ */
+public class NodeCodec {
+    public static final byte UNBOUND = 0;
+    public static final byte URI = 1;
+    public static final byte BLANK = 2;
+    /** A plain (xsd:string) literal */
+    public static final byte STRING = 3;
+    public static final byte LANG_STRING = 4;
+    public static final byte TYPED = 5;
+
+    /**
+     * Write a node
+     * @param out the output
+     * @param node the node (may be null)
+     * @throws IOException if the output fails
+     * @throws IllegalArgumentException if the node is not a URI, blank node or literal
+     */
+    public static void write(DataOutput out, Node node) throws IOException {
+        if (node == null) {
+            out.writeByte(UNBOUND);
+        }
+        else if (node.isURI()) {
+            out.writeByte(URI);
+            writeString(out, node.getURI());
+        }
+        else if (node.isBlank()) {
+            out.writeByte(BLANK);
+            writeString(out, node.getBlankNodeLabel());
+        }
+        else if (node.isLiteral()) {
+            String lang = node.getLiteralLanguage();
+            String datatype = node.getLiteralDatatypeURI();
+            if (lang != null && !lang.isEmpty()) {
+                out.writeByte(LANG_STRING);
+                writeString(out, node.getLiteralLexicalForm());
+                writeString(out, lang);
+            }
+            else if (datatype == null || XSDDatatype.XSDstring.getURI().equals(datatype)) {
+                out.writeByte(STRING);
+                writeString(out, node.getLiteralLexicalForm());
+            }
+            else {
+                out.writeByte(TYPED);
+                writeString(out, node.getLiteralLexicalForm());
+                writeString(out, datatype);
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Cannot encode node: " + node);
+        }
+    }
+
+    /**
+     * Write the values of some variables in a row
+     * @param out the output
+     * @param binding the row
+     * @param vars the variables to write, in order
+     * @throws IOException if the output fails
+     */
+    public static void writeRow(DataOutput out, Binding binding, Var[] vars) throws IOException {
+        for (Var var : vars) {
+            write(out, binding.get(var));
+        }
+    }
+
+    /**
+     * Write a complete row, including its variable names (so rows need not share the same variables)
+     * @param out the output
+     * @param binding the row
+     * @throws IOException if the output fails
+     */
+    public static void writeBinding(DataOutput out, Binding binding) throws IOException {
+        out.writeInt(binding.size());
+        Iterator<Var> vars = binding.vars();
+        while (vars.hasNext()) {
+            Var var = vars.next();
+            writeString(out, var.getVarName());
+            write(out, binding.get(var));
+        }
+    }
+
+    /**
+     * Read a node
+     * @param in the input
+     * @return the node (or null if it was unbound)
+     * @throws IOException if the input fails
+     */
+    public static Node read(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case UNBOUND:
+                return null;
+            case URI:
+                return NodeFactory.createURI(readString(in));
+            case BLANK:
+                return NodeFactory.createBlankNode(readString(in));
+            case STRING:
+                return NodeFactory.createLiteral(readString(in));
+            case LANG_STRING:
+                return NodeFactory.createLiteral(readString(in), readString(in));
+            case TYPED:
+                return typed(readString(in), readString(in));
+            default:
+                throw new IOException("Corrupt data, unknown node tag: " + tag);
+        }
+    }
+
+    /**
+     * Read a node from a buffer (at its current position)
+     * @param in the buffer
+     * @return the node (or null if it was unbound)
+     */
+    public static Node read(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case UNBOUND:
+                return null;
+            case URI:
+                return NodeFactory.createURI(readString(in));
+            case BLANK:
+                return NodeFactory.createBlankNode(readString(in));
+            case STRING:
+                return NodeFactory.createLiteral(readString(in));
+            case LANG_STRING:
+                return NodeFactory.createLiteral(readString(in), readString(in));
+            case TYPED:
+                return typed(readString(in), readString(in));
+            default:
+                throw new IllegalStateException("Corrupt data, unknown node tag: " + tag);
+        }
+    }
+
+    /**
+     * Read a row written by {@link #writeBinding(DataOutput, Binding)}
+     * @param in the input
+     * @return the row
+     * @throws IOException if the input fails
+     */
+    public static Binding readBinding(DataInput in) throws IOException {
+        BindingMap binding = BindingFactory.create();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Var var = Var.alloc(readString(in));
+            Node node = read(in);
+            if (node != null) {
+                binding.add(var, node);
+            }
+        }
+        return binding;
+    }
+
+    /**
+     * Read a row written by {@link #writeRow(DataOutput, Binding, Var[])}
+     * @param in the input
+     * @param vars the variables in the row (in the order written)
+     * @return the row
+     * @throws IOException if the input fails
+     */
+    public static Binding readRow(DataInput in, Var[] vars) throws IOException {
+        BindingMap binding = BindingFactory.create();
+        for (Var var : vars) {
+            Node node = read(in);
+            if (node != null) {
+                binding.add(var, node);
+            }
+        }
+        return binding;
+    }
+
+    /**
+     * Read a row written by {@link #writeRow(DataOutput, Binding, Var[])}
+     * @param in the buffer (at the start of the row)
+     * @param vars the variables in the row (in the order written)
+     * @return the row
+     */
+    public static Binding readRow(ByteBuffer in, Var[] vars) {
+        BindingMap binding = BindingFactory.create();
+        for (Var var : vars) {
+            Node node = read(in);
+            if (node != null) {
+                binding.add(var, node);
+            }
+        }
+        return binding;
+    }
+
+    private static Node typed(String lex, String datatype) {
+        return NodeFactory.createLiteral(lex, TypeMapper.getInstance().getSafeTypeByName(datatype));
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
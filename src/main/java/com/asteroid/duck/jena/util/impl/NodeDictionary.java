@@ -0,0 +1,66 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.graph.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary encoding of {@link Node}s to dense int IDs (0, 1, 2...) in the order they are first seen.
+ * Not thread safe for concurrent adds.
+ */
+public class NodeDictionary {
+    /** The ID used for "no node" (e.g. an unbound value) */
+    public static final int NONE = -1;
+
+    private final Map<Node, Integer> ids = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Get the ID of a node, adding it to the dictionary if it is not already present
+     * @param node the node (may be null)
+     * @return the ID, or {@link #NONE} for null
+     */
+    public int encode(Node node) {
+        if (node == null) {
+            return NONE;
+        }
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(node, id);
+            nodes.add(node);
+        }
+        return id;
+    }
+
+    /**
+     * Get the ID of a node without adding it
+     * @param node the node (may be null)
+     * @return the ID, or {@link #NONE} if the node is null or not in the dictionary
+     */
+    public int lookup(Node node) {
+        if (node == null) {
+            return NONE;
+        }
+        Integer id = ids.get(node);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * @param id the ID
+     * @return the node for an ID, or null for {@link #NONE}
+     */
+    public Node decode(int id) {
+        return id == NONE ? null : nodes.get(id);
+    }
+
+    /**
+     * @return the number of nodes in the dictionary
+     */
+    public int size() {
+        return nodes.size();
+    }
+}
@@ -0,0 +1,80 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * 64-bit fingerprints (hashes) of RDF terms, for de-duplicating large numbers of nodes without keeping them.
+ * Two equal nodes always have the same fingerprint; the chance of two different nodes sharing one is roughly
+ * n<sup>2</sup>/2<sup>65</sup> for n nodes.
+ *
+ * The hash is FNV-1a over the node kind and its strings, finished with the MurmurHash3 64-bit mix so that
+ * the low bits are usable directly as a hash table index.
+ */
+public class NodeFingerprint {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Fingerprint a node
+     * @param node the node (may be null, i.e. unbound)
+     * @return the fingerprint
+     */
+    public static long of(Node node) {
+        return mix(hash(FNV_OFFSET, node));
+    }
+
+    /**
+     * Fingerprint a tuple of nodes (e.g. the subject, predicate and object of a triple)
+     * @param nodes the nodes (any may be null)
+     * @return the fingerprint
+     */
+    public static long of(Node... nodes) {
+        long h = FNV_OFFSET;
+        for (Node node : nodes) {
+            h = hash(h, node);
+        }
+        return mix(h);
+    }
+
+    private static long hash(long h, Node node) {
+        if (node == null) {
+            return step(h, NodeCodec.UNBOUND);
+        }
+        if (node.isURI()) {
+            return hash(step(h, NodeCodec.URI), node.getURI());
+        }
+        if (node.isBlank()) {
+            return hash(step(h, NodeCodec.BLANK), node.getBlankNodeLabel());
+        }
+        if (node.isLiteral()) {
+            h = hash(step(h, NodeCodec.TYPED), node.getLiteralLexicalForm());
+            h = hash(h, node.getLiteralLanguage());
+            return hash(h, node.getLiteralDatatypeURI());
+        }
+        throw new IllegalArgumentException("Cannot fingerprint node: " + node);
+    }
+
+    private static long hash(long h, String s) {
+        if (s == null) {
+            return step(h, 0xFFFF);
+        }
+        for (int i = 0; i < s.length(); i++) {
+            h = step(h, s.charAt(i));
+        }
+        // terminate the string so that ("ab", "c") differs from ("a", "bc")
+        return step(h, 0xFFFF);
+    }
+
+    private static long step(long h, int value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
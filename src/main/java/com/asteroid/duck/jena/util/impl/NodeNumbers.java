@@ -0,0 +1,261 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers to read numbers directly from the lexical form of literal {@link Node}s,
+ * without creating Jena literal value objects (or boxing).
+ *
+ * Only literals with an XSD numeric datatype (<code>xsd:double</code>, <code>xsd:float</code>,
+ * <code>xsd:decimal</code>, <code>xsd:integer</code> and the types derived from it) are numbers, and their lexical
+ * form must follow the XSD rules for that datatype: so <code>"42"^^xsd:string</code> is not a number, and nor is
+ * Java-only syntax such as <code>"0x1p3"</code>, <code>"Infinity"</code> or <code>"1d"</code>.
+ *
+ * The <code>to...</code> methods never throw, returning a given value instead, so they are cheap to use on rows
+ * that are often unbound or not numbers.
+ */
+public class NodeNumbers {
+    private static final int NOT_NUMERIC = 0;
+    private static final int INTEGER = 1;
+    private static final int DECIMAL = 2;
+    private static final int FLOATING = 3;
+
+    /** The lexical space of each numeric datatype URI */
+    private static final Map<String, Integer> KINDS = new HashMap<>();
+
+    static {
+        KINDS.put(XSDDatatype.XSDdouble.getURI(), FLOATING);
+        KINDS.put(XSDDatatype.XSDfloat.getURI(), FLOATING);
+        KINDS.put(XSDDatatype.XSDdecimal.getURI(), DECIMAL);
+        for (XSDDatatype type : new XSDDatatype[] {
+                XSDDatatype.XSDinteger, XSDDatatype.XSDlong, XSDDatatype.XSDint, XSDDatatype.XSDshort,
+                XSDDatatype.XSDbyte, XSDDatatype.XSDnonNegativeInteger, XSDDatatype.XSDpositiveInteger,
+                XSDDatatype.XSDnonPositiveInteger, XSDDatatype.XSDnegativeInteger, XSDDatatype.XSDunsignedLong,
+                XSDDatatype.XSDunsignedInt, XSDDatatype.XSDunsignedShort, XSDDatatype.XSDunsignedByte }) {
+            KINDS.put(type.getURI(), INTEGER);
+        }
+    }
+
+    /**
+     * Parse the lexical form of a numeric literal as a double. Handles the XSD special values
+     * <code>INF</code>, <code>-INF</code> and <code>NaN</code>.
+     * @param node the node
+     * @return the value
+     * @throws NumberFormatException if the node is null or not a numeric literal
+     */
+    public static double parseDouble(Node node) throws NumberFormatException {
+        String lex = numericLexicalForm(node);
+        if (lex == null) {
+            throw new NumberFormatException("Not a numeric literal: " + node);
+        }
+        return doubleValue(lex);
+    }
+
+    /**
+     * Read a numeric literal as a double, without throwing
+     * @param node the node (may be null)
+     * @param otherwise the value if the node is not a numeric literal
+     * @return the value, or <code>otherwise</code>
+     */
+    public static double toDouble(Node node, double otherwise) {
+        String lex = numericLexicalForm(node);
+        return lex == null ? otherwise : doubleValue(lex);
+    }
+
+    /**
+     * Parse the lexical form of a numeric literal as a long
+     * @param node the node
+     * @return the value
+     * @throws NumberFormatException if the node is null, not a numeric literal or not an integer in range
+     */
+    public static long parseLong(Node node) throws NumberFormatException {
+        String lex = integerLexicalForm(node, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (lex == null) {
+            throw new NumberFormatException("Not an integer literal: " + node);
+        }
+        return Long.parseLong(lex);
+    }
+
+    /**
+     * Read a numeric literal as a long, without throwing
+     * @param node the node (may be null)
+     * @param otherwise the value if the node is not a numeric literal with an integer lexical form in range
+     * @return the value, or <code>otherwise</code>
+     */
+    public static long toLong(Node node, long otherwise) {
+        String lex = integerLexicalForm(node, Long.MIN_VALUE, Long.MAX_VALUE);
+        return lex == null ? otherwise : Long.parseLong(lex);
+    }
+
+    /**
+     * Parse the lexical form of a numeric literal as an int
+     * @param node the node
+     * @return the value
+     * @throws NumberFormatException if the node is null, not a numeric literal or not an integer in range
+     */
+    public static int parseInt(Node node) throws NumberFormatException {
+        String lex = integerLexicalForm(node, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (lex == null) {
+            throw new NumberFormatException("Not an int literal: " + node);
+        }
+        return (int) Long.parseLong(lex);
+    }
+
+    /**
+     * Read a numeric literal as an int, without throwing
+     * @param node the node (may be null)
+     * @param otherwise the value if the node is not a numeric literal with an integer lexical form in range
+     * @return the value, or <code>otherwise</code>
+     */
+    public static int toInt(Node node, int otherwise) {
+        String lex = integerLexicalForm(node, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return lex == null ? otherwise : (int) Long.parseLong(lex);
+    }
+
+    /**
+     * Test if a node is a numeric literal
+     * @param node the node
+     * @return true if {@link #parseDouble(Node)} would succeed
+     */
+    public static boolean isNumeric(Node node) {
+        return numericLexicalForm(node) != null;
+    }
+
+    /**
+     * Test if a node is a numeric literal with an integer lexical form in the range of a long
+     * @param node the node
+     * @return true if {@link #parseLong(Node)} would succeed
+     */
+    public static boolean isLong(Node node) {
+        return integerLexicalForm(node, Long.MIN_VALUE, Long.MAX_VALUE) != null;
+    }
+
+    private static double doubleValue(String lex) {
+        switch (lex) {
+            case "INF":
+            case "+INF":
+                return Double.POSITIVE_INFINITY;
+            case "-INF":
+                return Double.NEGATIVE_INFINITY;
+            case "NaN":
+                return Double.NaN;
+            default:
+                // already checked against the XSD lexical space, which Java accepts
+                return Double.parseDouble(lex);
+        }
+    }
+
+    /**
+     * @return the (whitespace collapsed) lexical form if the node is a valid numeric literal, otherwise null
+     */
+    private static String numericLexicalForm(Node node) {
+        int kind = kind(node);
+        if (kind == NOT_NUMERIC) {
+            return null;
+        }
+        String lex = node.getLiteralLexicalForm().trim();
+        return isLexical(lex, kind) ? lex : null;
+    }
+
+    /**
+     * @return the lexical form if the node is a numeric literal whose lexical form is an integer in the range,
+     * otherwise null
+     */
+    private static String integerLexicalForm(Node node, long min, long max) {
+        if (kind(node) == NOT_NUMERIC) {
+            return null;
+        }
+        String lex = node.getLiteralLexicalForm().trim();
+        if (!isLexical(lex, INTEGER) || !fitsLong(lex)) {
+            return null;
+        }
+        if (min == Long.MIN_VALUE && max == Long.MAX_VALUE) {
+            return lex;
+        }
+        long value = Long.parseLong(lex);
+        return value >= min && value <= max ? lex : null;
+    }
+
+    private static int kind(Node node) {
+        if (node == null || !node.isLiteral()) {
+            return NOT_NUMERIC;
+        }
+        Integer kind = KINDS.get(node.getLiteralDatatypeURI());
+        return kind == null ? NOT_NUMERIC : kind;
+    }
+
+    /**
+     * Check a lexical form against the XSD lexical space of a kind of number
+     */
+    private static boolean isLexical(String lex, int kind) {
+        final int n = lex.length();
+        if (kind == FLOATING && ("INF".equals(lex) || "+INF".equals(lex) || "-INF".equals(lex) || "NaN".equals(lex))) {
+            return true;
+        }
+        int i = 0;
+        if (i < n && (lex.charAt(i) == '+' || lex.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < n && isDigit(lex.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (kind == INTEGER) {
+            return digits > 0 && i == n;
+        }
+        if (i < n && lex.charAt(i) == '.') {
+            i++;
+            while (i < n && isDigit(lex.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (kind == DECIMAL) {
+            return i == n;
+        }
+        if (i < n && (lex.charAt(i) == 'e' || lex.charAt(i) == 'E')) {
+            i++;
+            if (i < n && (lex.charAt(i) == '+' || lex.charAt(i) == '-')) {
+                i++;
+            }
+            int exponent = 0;
+            while (i < n && isDigit(lex.charAt(i))) {
+                i++;
+                exponent++;
+            }
+            if (exponent == 0) {
+                return false;
+            }
+        }
+        return i == n;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @param lex a valid integer lexical form
+     * @return true if it is in the range of a long
+     */
+    private static boolean fitsLong(String lex) {
+        boolean negative = lex.charAt(0) == '-';
+        int start = negative || lex.charAt(0) == '+' ? 1 : 0;
+        while (start < lex.length() - 1 && lex.charAt(start) == '0') {
+            start++;
+        }
+        int digits = lex.length() - start;
+        if (digits != 19) {
+            return digits < 19;
+        }
+        return lex.substring(start).compareTo(negative ? "9223372036854775808" : "9223372036854775807") <= 0;
+    }
+}
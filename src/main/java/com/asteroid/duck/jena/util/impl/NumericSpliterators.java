@@ -0,0 +1,141 @@
+package com.asteroid.duck.jena.util.impl;
+
+import com.asteroid.duck.jena.util.NonNumericValueException;
+import com.asteroid.duck.jena.util.NumericPolicy;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Primitive spliterators reading a single variable from an iterator of {@link Binding}s.
+ * Values are parsed straight from the literal lexical form (see {@link NodeNumbers}) so nothing is boxed.
+ */
+public class NumericSpliterators {
+
+    /**
+     * Create a spliterator of doubles
+     * @param bindings the source rows
+     * @param size the number of rows if known, otherwise negative
+     * @param var the variable to read
+     * @param policy what to do with unbound or non-numeric values
+     * @param defaultValue the value used by {@link NumericPolicy#DEFAULT}
+     * @return the spliterator
+     */
+    public static Spliterator.OfDouble doubles(final Iterator<Binding> bindings, final long size, final Var var,
+                                               final NumericPolicy policy, final double defaultValue) {
+        return new Spliterators.AbstractDoubleSpliterator(estimate(size), characteristics(size, policy)) {
+            @Override
+            public boolean tryAdvance(DoubleConsumer action) {
+                while (bindings.hasNext()) {
+                    Node node = bindings.next().get(var);
+                    double value = NodeNumbers.toDouble(node, Double.NaN);
+                    // NaN is also the value of "NaN"^^xsd:double
+                    if (!Double.isNaN(value) || NodeNumbers.isNumeric(node)) {
+                        action.accept(value);
+                        return true;
+                    }
+                    if (policy == NumericPolicy.DEFAULT) {
+                        action.accept(defaultValue);
+                        return true;
+                    }
+                    failOrSkip(policy, var, node);
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a spliterator of longs
+     * @param bindings the source rows
+     * @param size the number of rows if known, otherwise negative
+     * @param var the variable to read
+     * @param policy what to do with unbound or non-numeric values
+     * @param defaultValue the value used by {@link NumericPolicy#DEFAULT}
+     * @return the spliterator
+     */
+    public static Spliterator.OfLong longs(final Iterator<Binding> bindings, final long size, final Var var,
+                                           final NumericPolicy policy, final long defaultValue) {
+        return new Spliterators.AbstractLongSpliterator(estimate(size), characteristics(size, policy)) {
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                while (bindings.hasNext()) {
+                    Node node = bindings.next().get(var);
+                    long value = NodeNumbers.toLong(node, Long.MIN_VALUE);
+                    if (value != Long.MIN_VALUE || NodeNumbers.isLong(node)) {
+                        action.accept(value);
+                        return true;
+                    }
+                    if (policy == NumericPolicy.DEFAULT) {
+                        action.accept(defaultValue);
+                        return true;
+                    }
+                    failOrSkip(policy, var, node);
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a spliterator of ints
+     * @param bindings the source rows
+     * @param size the number of rows if known, otherwise negative
+     * @param var the variable to read
+     * @param policy what to do with unbound or non-numeric values
+     * @param defaultValue the value used by {@link NumericPolicy#DEFAULT}
+     * @return the spliterator
+     */
+    public static Spliterator.OfInt ints(final Iterator<Binding> bindings, final long size, final Var var,
+                                         final NumericPolicy policy, final int defaultValue) {
+        return new Spliterators.AbstractIntSpliterator(estimate(size), characteristics(size, policy)) {
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                while (bindings.hasNext()) {
+                    Node node = bindings.next().get(var);
+                    // parsed as a long, so every int is distinguishable from the out of range sentinel
+                    long value = NodeNumbers.toLong(node, Long.MIN_VALUE);
+                    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                        action.accept((int) value);
+                        return true;
+                    }
+                    if (policy == NumericPolicy.DEFAULT) {
+                        action.accept(defaultValue);
+                        return true;
+                    }
+                    failOrSkip(policy, var, node);
+                }
+                return false;
+            }
+        };
+    }
+
+    private static void failOrSkip(NumericPolicy policy, Var var, Node node) {
+        if (policy == NumericPolicy.FAIL) {
+            throw new NonNumericValueException("Value of " + var + " is not numeric: " + node);
+        }
+    }
+
+    private static long estimate(long size) {
+        return size < 0 ? Long.MAX_VALUE : size;
+    }
+
+    /**
+     * Only when every row gives a value does a known row count give an exact size. Not under
+     * {@link NumericPolicy#FAIL} either: a SIZED stream may answer <code>count()</code> without reading the rows
+     * (Java 9+), and so without failing on a non-numeric value.
+     */
+    private static int characteristics(long size, NumericPolicy policy) {
+        if (size >= 0 && policy == NumericPolicy.DEFAULT) {
+            return Spliterator.ORDERED | Spliterator.SIZED;
+        }
+        return Spliterator.ORDERED;
+    }
+}
@@ -0,0 +1,219 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} that drains an {@link Iterator} on a separate producer thread into a bounded buffer
+ * of batches, so that producing elements (e.g. evaluating a query) overlaps with consuming them.
+ *
+ * The buffer holds at most <code>depth</code> batches; when it is full the producer waits (backpressure).
+ * An exception thrown by the source iterator is rethrown to the consumer once it reaches that point in the
+ * stream. {@link #close()} cancels the producer - streams using this should register it with
+ * {@link java.util.stream.Stream#onClose(Runnable)} and be closed (e.g. try-with-resources) if they are not
+ * fully consumed.
+ * @param <T> the element type
+ */
+public class PrefetchSpliterator<T> implements Spliterator<T>, AutoCloseable {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchSpliterator.class);
+    /** How often a blocked producer or consumer checks for cancellation */
+    private static final long POLL_MILLIS = 100;
+    /** Marks the end of the source */
+    private static final Object[] END = new Object[0];
+
+    private final Iterator<? extends T> source;
+    private final int batchSize;
+    private final BlockingQueue<Object[]> buffer;
+    private volatile boolean cancelled = false;
+    /** Set by the producer if the source fails, before {@link #END} is queued */
+    private volatile Throwable failure;
+
+    private Object[] batch = null;
+    private int index = 0;
+    private boolean finished = false;
+
+    /**
+     * Create and start prefetching
+     * @param source the iterator to drain (only ever touched by the producer thread)
+     * @param batchSize the number of elements in each batch
+     * @param depth the maximum number of batches buffered
+     * @param executor runs the producer
+     */
+    public PrefetchSpliterator(Iterator<? extends T> source, int batchSize, int depth, Executor executor) {
+        if (batchSize < 1 || depth < 1)
+            throw new IllegalArgumentException("Batch size and depth must be positive");
+        this.source = Objects.requireNonNull(source);
+        this.batchSize = batchSize;
+        this.buffer = new ArrayBlockingQueue<>(depth);
+        executor.execute(this::produce);
+    }
+
+    /**
+     * Create and start prefetching on a new daemon thread
+     * @param source the iterator to drain (only ever touched by the producer thread)
+     * @param batchSize the number of elements in each batch
+     * @param depth the maximum number of batches buffered
+     */
+    public PrefetchSpliterator(Iterator<? extends T> source, int batchSize, int depth) {
+        this(source, batchSize, depth, PrefetchSpliterator::daemon);
+    }
+
+    private static void daemon(Runnable runnable) {
+        Thread thread = new Thread(runnable, "prefetch-" + runnable.hashCode());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The producer loop
+     */
+    private void produce() {
+        Object[] next = new Object[batchSize];
+        int count = 0;
+        try {
+            while (!cancelled && source.hasNext()) {
+                T element = source.next();
+                next[count++] = element;
+                if (count == batchSize) {
+                    put(next);
+                    next = new Object[batchSize];
+                    count = 0;
+                }
+            }
+        }
+        catch(Throwable t) {
+            LOG.debug("Prefetch source failed", t);
+            failure = t;
+        }
+        try {
+            if (count > 0) {
+                Object[] trimmed = new Object[count];
+                System.arraycopy(next, 0, trimmed, 0, count);
+                put(trimmed);
+            }
+            put(END);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(Object[] next) throws InterruptedException {
+        while (!cancelled) {
+            if (buffer.offer(next, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wait for the next batch from the producer
+     * @return the batch, or null if the source is exhausted
+     */
+    private Object[] take() {
+        if (finished) {
+            return null;
+        }
+        Object[] next = null;
+        try {
+            // the producer stops queuing once cancelled, so keep checking rather than wait forever
+            while (!cancelled && next == null) {
+                next = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted waiting for prefetched data", e);
+        }
+        if (cancelled) {
+            throw new IllegalStateException("Stream has been closed");
+        }
+        if (next == END) {
+            finished = true;
+            Throwable t = failure;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t != null) {
+                throw new IllegalStateException("Prefetch failed", t);
+            }
+            return null;
+        }
+        return next;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        while (batch == null || index >= batch.length) {
+            batch = take();
+            index = 0;
+            if (batch == null) {
+                return false;
+            }
+        }
+        action.accept((T) batch[index++]);
+        return true;
+    }
+
+    /**
+     * Hands a whole buffered batch to another thread
+     * @return a spliterator over the next batch or null if there are no more
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+        Object[] next;
+        int from = 0;
+        if (batch != null && index < batch.length) {
+            next = batch;
+            from = index;
+        }
+        else {
+            next = take();
+        }
+        batch = null;
+        index = 0;
+        if (next == null) {
+            return null;
+        }
+        return Spliterators.spliterator(next, from, next.length, ORDERED | NONNULL);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Cancel the producer and discard any buffered data. A consumer waiting for data (on another thread) wakes
+     * and fails with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        buffer.clear();
+        // wake a waiting consumer now, rather than at its next check
+        buffer.offer(END);
+    }
+}
@@ -1,5 +1,6 @@
 package com.asteroid.duck.jena.util.query.impl;
 
+import com.asteroid.duck.jena.util.ResultCache;
 import com.asteroid.duck.jena.util.query.InvalidQueryException;
 import com.asteroid.duck.jena.util.query.OrderType;
 import com.asteroid.duck.jena.util.query.QueryBuilder;
@@ -312,7 +313,17 @@ public class QueryBuilderImpl implements QueryBuilder, PrefixState, CrudState, F
         return QueryExecutionFactory.create(localQuery, dataset);
     }
 
-
+    /**
+     * Provides the results of this (SELECT) query from a cache, only executing the query if there are no
+     * current cached results for the dataset.
+     *
+     * @param dataset a dataset to query
+     * @param cache the cache of results
+     * @return the results
+     */
+    public ResultSetRewindable getResults(Dataset dataset, ResultCache cache) {
+        return cache.select(build(), dataset);
+    }
 
     /**
      * Appends the variable identifier <i>?</i> to the variable.
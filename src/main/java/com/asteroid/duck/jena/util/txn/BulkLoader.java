@@ -0,0 +1,417 @@
+package com.asteroid.duck.jena.util.txn;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Loads a large stream of statements (or triples) into a dataset in batches, committing a
+ * {@link JenaTransaction} every few batches. This avoids both one huge write transaction (which holds every
+ * change in memory until the commit) and a transaction per statement (which is very slow).
+ *
+ * Triples are added straight to the {@link Graph}. If adding a batch fails, the uncommitted batches in the
+ * transaction are replayed one batch per transaction, so that only the failing batch is skipped (and reported)
+ * and the load carries on. A load can also be resumed from a previous {@link Report#getPosition() position}.
+ * <pre>
+ * BulkLoader.Report report = BulkLoader.into(dataset)
+ *         .batchSize(50_000)
+ *         .batchesPerCommit(4)
+ *         .progress(p -&gt; LOG.info(p.toString()))
+ *         .load(StatementStream.fromSeq(source.listStatements()));
+ * </pre>
+ * The load must not be run inside a transaction on the dataset. At most
+ * <code>batchSize * batchesPerCommit</code> triples are held in memory.
+ */
+public class BulkLoader {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    /** Default number of triples in a batch */
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    /** Default number of batches in each transaction */
+    public static final int DEFAULT_BATCHES_PER_COMMIT = 10;
+
+    private final Dataset dataset;
+    private String graphName = null;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int batchesPerCommit = DEFAULT_BATCHES_PER_COMMIT;
+    private long skip = 0;
+    private Consumer<Report> progress = null;
+
+    private BulkLoader(Dataset dataset) {
+        this.dataset = Objects.requireNonNull(dataset);
+    }
+
+    /**
+     * Create a loader (into the default graph)
+     * @param dataset the dataset to load into
+     * @return the loader
+     */
+    public static BulkLoader into(Dataset dataset) {
+        return new BulkLoader(dataset);
+    }
+
+    /**
+     * @param graphName the URI of the named graph to load into (null for the default graph)
+     * @return this loader
+     */
+    public BulkLoader graph(String graphName) {
+        this.graphName = graphName;
+        return this;
+    }
+
+    /**
+     * @param batchSize the number of triples in each batch (the unit skipped on failure)
+     * @return this loader
+     */
+    public BulkLoader batchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param batchesPerCommit the number of batches in each transaction
+     * @return this loader
+     */
+    public BulkLoader batchesPerCommit(int batchesPerCommit) {
+        if (batchesPerCommit < 1)
+            throw new IllegalArgumentException("Batches per commit must be at least 1");
+        this.batchesPerCommit = batchesPerCommit;
+        return this;
+    }
+
+    /**
+     * Resume a load: skip the first triples of the input, e.g. those up to the {@link Report#getPosition()}
+     * of an earlier, interrupted, load of the same input
+     * @param triples the number of triples to skip
+     * @return this loader
+     */
+    public BulkLoader skip(long triples) {
+        if (triples < 0)
+            throw new IllegalArgumentException("Cannot skip a negative number of triples");
+        this.skip = triples;
+        return this;
+    }
+
+    /**
+     * @param listener called (on the loading thread) with the progress so far after each commit
+     * @return this loader
+     */
+    public BulkLoader progress(Consumer<Report> listener) {
+        this.progress = listener;
+        return this;
+    }
+
+    /**
+     * Load statements
+     * @param statements the statements (consumed in encounter order)
+     * @return a report of the load
+     */
+    public Report load(Stream<Statement> statements) {
+        return loadTriples(statements.map(Statement::asTriple));
+    }
+
+    /**
+     * Load triples
+     * @param triples the triples (consumed in encounter order)
+     * @return a report of the load
+     */
+    public Report loadTriples(Stream<Triple> triples) {
+        return load(triples.iterator());
+    }
+
+    /**
+     * Load triples
+     * @param triples the triples
+     * @return a report of the load
+     */
+    public Report load(Iterator<Triple> triples) {
+        return run(triples, (graph, datasetGraph, triple) -> graph.add(triple));
+    }
+
+    /**
+     * Load quads (e.g. parsed from N-Quads). Quads in the default graph go to the loader's {@link #graph(String) graph}.
+     * @param quads the quads
+     * @return a report of the load
+     */
+    public Report loadQuads(Iterator<Quad> quads) {
+        return run(quads, (graph, datasetGraph, quad) -> {
+            if (quad.isDefaultGraph()) {
+                graph.add(quad.asTriple());
+            }
+            else {
+                datasetGraph.add(quad);
+            }
+        });
+    }
+
+    private <T> Report run(Iterator<T> items, Sink<T> sink) {
+        if (dataset.isInTransaction())
+            throw new IllegalStateException("Bulk load cannot run inside a transaction");
+        Load<T> load = new Load<>(sink);
+        long skipped = 0;
+        while (skipped < skip && items.hasNext()) {
+            items.next();
+            skipped++;
+        }
+        load.position = skipped;
+
+        List<Object[]> pending = new ArrayList<>(batchesPerCommit);
+        Object[] batch = new Object[batchSize];
+        int count = 0;
+        while (items.hasNext()) {
+            batch[count++] = items.next();
+            if (count == batchSize) {
+                pending.add(batch);
+                batch = new Object[batchSize];
+                count = 0;
+                if (pending.size() == batchesPerCommit) {
+                    load.commit(pending);
+                    pending.clear();
+                }
+            }
+        }
+        if (count > 0) {
+            pending.add(Arrays.copyOf(batch, count));
+        }
+        if (!pending.isEmpty()) {
+            load.commit(pending);
+        }
+        Report report = load.report();
+        LOG.info("Bulk load complete: " + report);
+        return report;
+    }
+
+    private Graph graph() {
+        return graphName == null ? dataset.asDatasetGraph().getDefaultGraph()
+                : dataset.asDatasetGraph().getGraph(NodeFactory.createURI(graphName));
+    }
+
+    /**
+     * Adds one item inside a write transaction
+     */
+    private interface Sink<T> {
+        void add(Graph graph, DatasetGraph datasetGraph, T item);
+    }
+
+    /**
+     * The running state of one load
+     */
+    private class Load<T> {
+        private final Sink<T> sink;
+        private final long start = System.nanoTime();
+        private final List<Failure> failures = new ArrayList<>();
+        private long position;
+        private long loaded = 0;
+        private long commits = 0;
+
+        private Load(Sink<T> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Add the batches in one transaction; if that fails replay them one per transaction
+         */
+        private void commit(List<Object[]> batches) {
+            try {
+                write(batches);
+            }
+            catch(RuntimeException e) {
+                if (batches.size() == 1) {
+                    fail(batches.get(0), e);
+                }
+                else {
+                    LOG.warn("Transaction of " + batches.size() + " batches failed, retrying batches individually", e);
+                    for (Object[] batch : batches) {
+                        try {
+                            write(Collections.singletonList(batch));
+                        }
+                        catch(RuntimeException batchFailure) {
+                            fail(batch, batchFailure);
+                        }
+                    }
+                }
+            }
+            if (progress != null) {
+                progress.accept(report());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void write(List<Object[]> batches) {
+            JenaTransaction txn = JenaTransaction.begin(dataset, ReadWrite.WRITE);
+            boolean committed = false;
+            try {
+                Graph graph = graph();
+                DatasetGraph datasetGraph = dataset.asDatasetGraph();
+                long added = 0;
+                for (Object[] batch : batches) {
+                    for (Object item : batch) {
+                        sink.add(graph, datasetGraph, (T) item);
+                    }
+                    added += batch.length;
+                }
+                txn.commit();
+                committed = true;
+                commits++;
+                loaded += added;
+                position += added;
+            }
+            finally {
+                if (!committed) {
+                    abortQuietly(txn);
+                }
+                try {
+                    txn.end();
+                }
+                catch(JenaTransactionException e) {
+                    LOG.warn("Unable to end transaction", e);
+                }
+            }
+        }
+
+        private void fail(Object[] batch, RuntimeException e) {
+            LOG.warn("Skipping batch of " + batch.length + " triples at position " + position, e);
+            failures.add(new Failure(position, batch.length, e));
+            position += batch.length;
+        }
+
+        private Report report() {
+            return new Report(position, loaded, commits, failures, System.nanoTime() - start);
+        }
+    }
+
+    private static void abortQuietly(JenaTransaction txn) {
+        try {
+            txn.abort();
+        }
+        catch(RuntimeException e) {
+            LOG.warn("Unable to abort transaction", e);
+        }
+    }
+
+    /**
+     * A batch that could not be loaded
+     */
+    public static class Failure {
+        private final long position;
+        private final int size;
+        private final RuntimeException cause;
+
+        private Failure(long position, int size, RuntimeException cause) {
+            this.position = position;
+            this.size = size;
+            this.cause = cause;
+        }
+
+        /**
+         * @return the position in the input of the first triple of the batch
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the number of triples in the batch
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return why it failed
+         */
+        public RuntimeException getCause() {
+            return cause;
+        }
+    }
+
+    /**
+     * The progress, or outcome, of a load
+     */
+    public static class Report {
+        private final long position;
+        private final long loaded;
+        private final long commits;
+        private final List<Failure> failures;
+        private final long elapsedNanos;
+
+        private Report(long position, long loaded, long commits, List<Failure> failures, long elapsedNanos) {
+            this.position = position;
+            this.loaded = loaded;
+            this.commits = commits;
+            this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of input triples dealt with (skipped, loaded or failed); a load can be resumed from here
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the number of triples committed by this load
+         */
+        public long getLoaded() {
+            return loaded;
+        }
+
+        /**
+         * @return the number of transactions committed
+         */
+        public long getCommits() {
+            return commits;
+        }
+
+        /**
+         * @return the batches that could not be loaded
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @param unit the unit wanted
+         * @return the time taken so far
+         */
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the triples loaded per second so far
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : loaded * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return loaded + " triples loaded in " + getElapsed(TimeUnit.MILLISECONDS) + "ms ("
+                    + Math.round(getThroughput()) + "/s), " + commits + " commits, "
+                    + failures.size() + " failed batches, position " + position;
+        }
+    }
+}
@@ -8,9 +8,12 @@ import org.apache.jena.sparql.JenaTransactionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -27,6 +30,38 @@ public abstract class JenaTransaction implements AutoCloseable {
      */
     private static ThreadLocal<Concrete> localHelper = new ThreadLocal<>();
 
+    /**
+     * Listeners notified when a {@link ReadWrite#WRITE} transaction commits
+     */
+    private static final List<Consumer<Dataset>> commitListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Register a listener to be called (on the committing thread) after any {@link ReadWrite#WRITE} transaction
+     * begun through this class commits. This allows things derived from a dataset (e.g. caches) to be invalidated.
+     * @param listener receives the dataset that has been changed
+     */
+    public static void addCommitListener(Consumer<Dataset> listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with {@link #addCommitListener(Consumer)}
+     * @param listener the listener to remove
+     */
+    public static void removeCommitListener(Consumer<Dataset> listener) {
+        commitListeners.remove(listener);
+    }
+
+    /**
+     * Whether the current thread is inside a {@link ReadWrite#WRITE} transaction on a dataset. Anything read there
+     * may include changes that are later aborted, so it must not be cached beyond the transaction.
+     * @param dataset the dataset
+     * @return true if the current thread is writing to the dataset
+     */
+    public static boolean isWriting(Dataset dataset) {
+        return dataset.isInTransaction() && dataset.transactionMode() == ReadWrite.WRITE;
+    }
+
     /**
      * A helper method to run a {@link Callable} inside a {@link ReadWrite#READ} transaction. This method takes care of {@link #begin(Dataset, ReadWrite)}
      * and {@link #end()}. The rest is up to you...
@@ -209,6 +244,16 @@ public abstract class JenaTransaction implements AutoCloseable {
         @Override
         public void commit() {
             dataset.commit();
+            if (mode == ReadWrite.WRITE) {
+                for (Consumer<Dataset> listener : commitListeners) {
+                    try {
+                        listener.accept(dataset);
+                    }
+                    catch(RuntimeException e) {
+                        LOG.warn("Commit listener failed", e);
+                    }
+                }
+            }
         }
     }
 
@@ -0,0 +1,334 @@
+package com.asteroid.duck.jena.util.txn;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a (large, uncompressed) N-Triples or N-Quads file into a dataset, parsing in parallel.
+ *
+ * The file is memory mapped and split into chunks at line boundaries; each chunk is parsed by RIOT on a
+ * worker thread, and the parsed chunks are passed, in file order, to a single {@link BulkLoader} on the calling
+ * thread which writes them in batched transactions. Since every line is a complete triple or quad the chunks are
+ * independent, except for blank node labels: those are scoped to the file by giving every chunk's parser the same
+ * (per load) seed, so a label maps to the same blank node whichever chunk it appears in.
+ * <pre>
+ * BulkLoader.Report report = ParallelLoader.from(Paths.get("dump.nt"))
+ *         .threads(8)
+ *         .load(BulkLoader.into(dataset).batchSize(50_000));
+ * </pre>
+ * Positions in the report (for resuming with {@link BulkLoader#skip(long)}) count triples in file order.
+ */
+public class ParallelLoader {
+    /** SLF4J Logger */
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelLoader.class);
+
+    /** Default size of the chunks parsed by each task */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final Path file;
+    private Lang lang;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private ParallelLoader(Path file) {
+        this.file = Objects.requireNonNull(file);
+        this.lang = RDFLanguages.filenameToLang(file.toString(), Lang.NTRIPLES);
+    }
+
+    /**
+     * Create a loader for a file. The syntax is guessed from the file extension (N-Triples by default).
+     * @param file the file
+     * @return the loader
+     */
+    public static ParallelLoader from(Path file) {
+        return new ParallelLoader(file);
+    }
+
+    /**
+     * @param lang the syntax of the file: {@link Lang#NTRIPLES} or {@link Lang#NQUADS}
+     * @return this loader
+     */
+    public ParallelLoader lang(Lang lang) {
+        this.lang = lang;
+        return this;
+    }
+
+    /**
+     * @param threads the number of parsing threads
+     * @return this loader
+     */
+    public ParallelLoader threads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param chunkSize the approximate number of bytes parsed by each task (a chunk grows to hold a longer line)
+     * @return this loader
+     */
+    public ParallelLoader chunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Parse the file and load it
+     * @param loader the bulk loader to write with (its batch, commit, skip and progress settings apply)
+     * @return the report of the load
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws org.apache.jena.riot.RiotException if the file cannot be parsed
+     */
+    public BulkLoader.Report load(BulkLoader loader) {
+        if (!RDFLanguages.sameLang(lang, Lang.NTRIPLES) && !RDFLanguages.sameLang(lang, Lang.NQUADS))
+            throw new IllegalArgumentException("Only line based N-Triples and N-Quads can be split: " + lang);
+        final boolean quads = RDFLanguages.sameLang(lang, Lang.NQUADS);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ParserThreads());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Parsed parsed = new Parsed(new Chunks(channel), executor, UUID.randomUUID(), quads);
+            BulkLoader.Report report;
+            if (quads) {
+                report = loader.loadQuads(parsed.as());
+            } else {
+                report = loader.load(parsed.as());
+            }
+            LOG.info("Loaded " + file + " in " + parsed.chunkCount + " chunks");
+            return report;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the file into chunks ending at a line break
+     */
+    private class Chunks {
+        private final FileChannel channel;
+        private final long size;
+        private long position = 0;
+
+        private Chunks(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * @return the next chunk, or null at the end of the file
+         */
+        private ByteBuffer next() throws IOException {
+            if (position >= size) {
+                return null;
+            }
+            long length = Math.min(chunkSize, size - position);
+            while (true) {
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                if (position + length == size) {
+                    position = size;
+                    return chunk;
+                }
+                for (int i = (int) length - 1; i >= 0; i--) {
+                    if (chunk.get(i) == '\n') {
+                        chunk.limit(i + 1);
+                        position += i + 1;
+                        return chunk;
+                    }
+                }
+                // a line longer than the chunk
+                if (length >= Integer.MAX_VALUE / 2)
+                    throw new IOException("Line too long at " + position + " in " + file);
+                length = Math.min(length * 2, size - position);
+            }
+        }
+    }
+
+    /**
+     * The parsed triples or quads in file order, parsing ahead a bounded number of chunks
+     */
+    private class Parsed implements Iterator<Object> {
+        private final Chunks chunks;
+        private final ExecutorService executor;
+        private final UUID seed;
+        private final boolean quads;
+        private final Deque<Future<List<Object>>> parsing = new ArrayDeque<>();
+        private Iterator<Object> current = Collections.emptyIterator();
+        private boolean exhausted = false;
+        private int chunkCount = 0;
+
+        private Parsed(Chunks chunks, ExecutorService executor, UUID seed, boolean quads) {
+            this.chunks = chunks;
+            this.executor = executor;
+            this.seed = seed;
+            this.quads = quads;
+        }
+
+        /**
+         * @return this, as an iterator of the element type (triples or quads) it produces
+         */
+        @SuppressWarnings("unchecked")
+        private <T> Iterator<T> as() {
+            return (Iterator<T>) (Iterator<?>) this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                fill();
+                Future<List<Object>> next = parsing.poll();
+                if (next == null) {
+                    return false;
+                }
+                current = get(next).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * Keep two chunks per thread being parsed (or waiting to be)
+         */
+        private void fill() {
+            try {
+                while (!exhausted && parsing.size() < threads * 2) {
+                    ByteBuffer chunk = chunks.next();
+                    if (chunk == null) {
+                        exhausted = true;
+                    } else {
+                        chunkCount++;
+                        parsing.add(executor.submit(() -> parse(chunk)));
+                    }
+                }
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<Object> parse(ByteBuffer chunk) {
+            final List<Object> items = new ArrayList<>();
+            RDFParser.create()
+                    .source(new ByteBufferInputStream(chunk))
+                    .lang(lang)
+                    .labelToNode(LabelToNode.createScopeByDocumentHash(seed))
+                    .parse(new StreamRDFBase() {
+                        @Override
+                        public void triple(Triple triple) {
+                            items.add(quads ? new Quad(Quad.defaultGraphIRI, triple) : triple);
+                        }
+
+                        @Override
+                        public void quad(Quad quad) {
+                            items.add(quads ? quad : quad.asTriple());
+                        }
+                    });
+            return items;
+        }
+
+        private List<Object> get(Future<List<Object>> future) {
+            try {
+                return future.get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading " + file, e);
+            }
+            catch(ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Unable to parse " + file, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Reads a (mapped) buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Daemon threads for parsing
+     */
+    private static class ParserThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "parallel-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
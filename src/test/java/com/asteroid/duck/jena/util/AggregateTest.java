@@ -0,0 +1,79 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AggregateTest {
+    private static final Var GROUP = Var.alloc("g");
+    private static final Var VALUE = Var.alloc("v");
+    private static final Var ID = Var.alloc("id");
+
+    private static List<Binding> rows() {
+        List<Binding> rows = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            BindingMap row = BindingFactory.create();
+            row.add(GROUP, NodeFactory.createURI("http://example.org/test#" + (i % 4)));
+            if (i % 10 != 0) {
+                row.add(VALUE, NodeFactory.createLiteral(Integer.toString(i % 100), XSDDatatype.XSDinteger));
+            }
+            row.add(ID, NodeFactory.createLiteral("id" + (i % 20_000)));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void groupBy() {
+        Map<List<Node>, AggregateGroup> groups = rows().parallelStream()
+                .collect(ResultStream.groupBy(Collections.singletonList("g"),
+                        Aggregate.count(), Aggregate.count("v"), Aggregate.sum("v"), Aggregate.min("v"),
+                        Aggregate.max("v"), Aggregate.avg("v"), Aggregate.approxDistinct("id")));
+        assertEquals(4, groups.size());
+
+        AggregateGroup group = groups.get(Collections.singletonList(NodeFactory.createURI("http://example.org/test#1")));
+        assertEquals(NodeFactory.createURI("http://example.org/test#1"), group.getKey("g"));
+        assertEquals(25_000L, group.get(0));
+        // rows 1, 5, 9 ... (mod 100) of which those = 0 mod 10 are unbound: none, since they are odd
+        assertEquals(25_000L, group.getLong(1));
+        // values 1, 5, 9, ... 97 each 1000 times
+        assertEquals(1000.0 * 25 * 49, group.getDouble(2), 0.0);
+        assertEquals(1.0, group.getDouble(3), 0.0);
+        assertEquals(97.0, group.getDouble(4), 0.0);
+        assertEquals(49.0, group.getDouble(5), 0.0);
+        // ids 1, 5, 9 ... (mod 20000): 5000 distinct
+        assertEquals(5000, group.getLong(6), 5000 * 0.1);
+
+        AggregateGroup even = groups.get(Collections.singletonList(NodeFactory.createURI("http://example.org/test#0")));
+        assertEquals(25_000L, even.get(0));
+        // multiples of 4 that are also multiples of 10 are unbound
+        assertEquals(20_000L, even.get(1));
+    }
+
+    @Test
+    public void noGroups() {
+        Map<List<Node>, AggregateGroup> groups = rows().stream()
+                .collect(ResultStream.groupBy(Collections.emptyList(), Aggregate.count(), Aggregate.approxDistinct("g")));
+        assertEquals(1, groups.size());
+        AggregateGroup all = groups.get(Collections.emptyList());
+        assertEquals(100_000L, all.get(0));
+        assertEquals(4L, all.get(1));
+
+        Map<List<Node>, AggregateGroup> empty = new ArrayList<Binding>().stream()
+                .collect(ResultStream.groupBy(Arrays.asList("g"), Aggregate.min("v")));
+        assertTrue(empty.isEmpty());
+    }
+}
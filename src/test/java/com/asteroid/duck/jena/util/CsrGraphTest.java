@@ -0,0 +1,136 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.txn.JenaTransaction;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ReadWrite;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.asteroid.duck.jena.util.TestData.CHILD;
+import static com.asteroid.duck.jena.util.TestData.names;
+import static com.asteroid.duck.jena.util.TestData.node;
+import static com.asteroid.duck.jena.util.TestData.testModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CsrGraphTest {
+    @Test
+    public void build() {
+        CsrGraph csr = CsrGraph.build(testModel().getGraph(), CHILD, CHILD);
+        assertEquals(5, csr.nodeCount());
+        assertEquals(4, csr.edgeCount());
+        assertEquals(CsrGraph.NONE, csr.id(node("Z")));
+
+        int a = csr.id(node("A"));
+        assertEquals(2, csr.degree(a, CsrGraph.Direction.FORWARD));
+        assertEquals(0, csr.degree(a, CsrGraph.Direction.REVERSE));
+        assertEquals(Arrays.asList("B", "C"), names(csr.neighbours(node("A"), CsrGraph.Direction.FORWARD)));
+        assertEquals(Arrays.asList("B"), names(csr.neighbours(node("E"), CsrGraph.Direction.REVERSE)));
+    }
+
+    @Test
+    public void traversal() {
+        CsrGraph csr = CsrGraph.build(testModel().getGraph(), CHILD);
+        int a = csr.id(node("A"));
+        int[] bfs = csr.bfs(a, CsrGraph.Direction.FORWARD);
+        assertEquals(5, bfs.length);
+        assertEquals(a, bfs[0]);
+        assertEquals(Arrays.asList("B", "C"), names(csr.nodes(Arrays.copyOfRange(bfs, 1, 3))));
+
+        int[] dfs = csr.dfs(a, CsrGraph.Direction.FORWARD);
+        assertEquals(5, dfs.length);
+        // D and E follow B immediately, wherever C comes
+        List<Node> order = csr.nodes(dfs);
+        int b = order.indexOf(node("B"));
+        assertEquals(Arrays.asList("D", "E"), names(order.subList(b + 1, b + 3)));
+
+        assertEquals(Arrays.asList("B", "C", "D", "E"), names(csr.descendants(node("A"))));
+        assertEquals(Arrays.asList("A", "B"), names(csr.ancestors(node("D"))));
+        assertTrue(csr.isReachable(node("A"), node("E")));
+        assertFalse(csr.isReachable(node("C"), node("E")));
+        assertFalse(csr.isReachable(node("A"), node("A")));
+    }
+
+    @Test
+    public void cycle() {
+        Graph graph = testModel().getGraph();
+        graph.add(Triple.create(node("E"), CHILD, node("A")));
+        CsrGraph csr = CsrGraph.build(graph, CHILD);
+        assertTrue(csr.isReachable(node("A"), node("A")));
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), names(csr.descendants(node("A"))));
+    }
+
+    @Test
+    public void watchGraph() {
+        Graph graph = testModel().getGraph();
+        AdjacencyIndex index = AdjacencyIndex.watch(graph, CHILD);
+        CsrGraph first = index.get();
+        assertSame(first, index.get());
+        assertEquals(1, index.rebuilds());
+
+        // other predicates do not invalidate
+        graph.add(Triple.create(node("A"), node("other"), node("Z")));
+        assertFalse(index.isStale());
+
+        graph.add(Triple.create(node("C"), CHILD, node("Z")));
+        assertTrue(index.isStale());
+        assertTrue(index.get().isReachable(node("A"), node("Z")));
+        assertEquals(2, index.rebuilds());
+
+        // once closed, changes are no longer followed
+        index.close();
+        graph.delete(Triple.create(node("C"), CHILD, node("Z")));
+        assertFalse(index.isStale());
+    }
+
+    @Test
+    public void watchDataset() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        JenaTransaction.writeWithCommit(() -> dataset.getDefaultModel().add(testModel()), dataset);
+        try (AdjacencyIndex index = AdjacencyIndex.watch(dataset, CHILD)) {
+            assertEquals(4, index.get().edgeCount());
+            assertFalse(index.isStale());
+            JenaTransaction.writeWithCommit(() -> {
+                dataset.getDefaultModel().getGraph().add(Triple.create(node("E"), CHILD, node("Z")));
+                return null;
+            }, dataset);
+            assertTrue(index.isStale());
+            assertEquals(5, index.get().edgeCount());
+
+            // a commit through another wrapper of the same dataset graph
+            Dataset wrapper = DatasetFactory.wrap(dataset.asDatasetGraph());
+            JenaTransaction.writeWithCommit(() -> {
+                wrapper.getDefaultModel().getGraph().add(Triple.create(node("Z"), CHILD, node("Y")));
+                return null;
+            }, wrapper);
+            assertTrue(index.isStale());
+            assertEquals(6, index.get().edgeCount());
+        }
+    }
+
+    @Test
+    public void watchDatasetAbort() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        JenaTransaction.writeWithCommit(() -> dataset.getDefaultModel().add(testModel()), dataset);
+        try (AdjacencyIndex index = AdjacencyIndex.watch(dataset, CHILD)) {
+            assertEquals(4, index.get().edgeCount());
+            JenaTransaction.runWith(txn -> {
+                dataset.getDefaultModel().getGraph().add(Triple.create(node("E"), CHILD, node("Z")));
+                // sees its own changes, without keeping them
+                assertEquals(5, index.get().edgeCount());
+                txn.abort();
+                return null;
+            }, dataset, ReadWrite.WRITE);
+            assertEquals(4, index.get().edgeCount());
+            assertEquals(1, index.rebuilds());
+        }
+    }
+}
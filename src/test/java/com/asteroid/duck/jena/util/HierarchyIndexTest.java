@@ -0,0 +1,120 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.asteroid.duck.jena.util.TestData.CHILD;
+import static com.asteroid.duck.jena.util.TestData.TEST_NS;
+import static com.asteroid.duck.jena.util.TestData.node;
+import static com.asteroid.duck.jena.util.TestData.testModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchyIndexTest {
+    private static List<String> descendants(HierarchyIndex index, String name) {
+        return index.descendants(node(name)).map(Node::getLocalName).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void tree() {
+        Model model = testModel();
+        HierarchyIndex index = HierarchyIndex.build(model, model.createProperty(TEST_NS + "child"));
+        assertEquals(5, index.intervalCount());
+        assertTrue(index.isDescendant(node("E"), node("A")));
+        assertTrue(index.isAncestor(node("B"), node("D")));
+        assertFalse(index.isDescendant(node("E"), node("C")));
+        assertFalse(index.isDescendant(node("A"), node("A")));
+        assertFalse(index.isDescendant(node("A"), node("B")));
+        assertFalse(index.isDescendant(node("Z"), node("A")));
+
+        assertEquals(Arrays.asList("B", "C", "D", "E"), descendants(index, "A"));
+        assertEquals(Arrays.asList("D", "E"), descendants(index, "B"));
+        assertEquals(0, index.descendants(node("C")).count());
+        assertEquals(4, index.descendantCount(node("A")));
+        assertEquals(Arrays.asList(node("A")), index.roots());
+    }
+
+    @Test
+    public void dag() {
+        Graph graph = testModel().getGraph();
+        // D now has parents B and C, and F is under D
+        graph.add(Triple.create(node("C"), CHILD, node("D")));
+        graph.add(Triple.create(node("D"), CHILD, node("F")));
+        HierarchyIndex index = HierarchyIndex.build(graph, CHILD);
+        assertEquals(Arrays.asList("D", "F"), descendants(index, "C"));
+        assertEquals(Arrays.asList("D", "E", "F"), descendants(index, "B"));
+        assertEquals(Arrays.asList("B", "C", "D", "E", "F"), descendants(index, "A"));
+        assertTrue(index.isDescendant(node("F"), node("C")));
+        assertFalse(index.isDescendant(node("E"), node("C")));
+    }
+
+    @Test
+    public void reverse() {
+        Graph graph = GraphFactory.createDefaultGraph();
+        Node subClassOf = NodeFactory.createURI(TEST_NS + "subClassOf");
+        graph.add(Triple.create(node("Dog"), subClassOf, node("Mammal")));
+        graph.add(Triple.create(node("Mammal"), subClassOf, node("Animal")));
+        HierarchyIndex index = HierarchyIndex.build(CsrGraph.build(graph, subClassOf), CsrGraph.Direction.REVERSE);
+        assertTrue(index.isDescendant(node("Dog"), node("Animal")));
+        assertEquals(Arrays.asList("Dog", "Mammal"), descendants(index, "Animal"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cycle() {
+        Graph graph = testModel().getGraph();
+        graph.add(Triple.create(node("E"), CHILD, node("B")));
+        HierarchyIndex.build(graph, CHILD);
+    }
+
+    @Test
+    public void randomDag() {
+        Random random = new Random(42);
+        Graph graph = GraphFactory.createDefaultGraph();
+        int n = 300;
+        for (int i = 1; i < n; i++) {
+            int parents = 1 + random.nextInt(3);
+            for (int j = 0; j < parents; j++) {
+                graph.add(Triple.create(node("n" + random.nextInt(i)), CHILD, node("n" + i)));
+            }
+        }
+        CsrGraph csr = CsrGraph.build(graph, CHILD);
+        HierarchyIndex index = HierarchyIndex.build(csr, CsrGraph.Direction.FORWARD);
+        for (int a = 0; a < csr.nodeCount(); a++) {
+            BitSet expected = csr.reachable(a, CsrGraph.Direction.FORWARD);
+            for (int d = 0; d < csr.nodeCount(); d++) {
+                assertEquals(expected.get(d), index.isDescendant(d, a));
+            }
+            BitSet actual = new BitSet();
+            index.descendantIds(a).forEach(actual::set);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void watch() {
+        Graph graph = testModel().getGraph();
+        try (AdjacencyIndex adjacency = AdjacencyIndex.watch(graph, CHILD)) {
+            Supplier<HierarchyIndex> hierarchy = HierarchyIndex.watch(adjacency, CsrGraph.Direction.FORWARD);
+            HierarchyIndex first = hierarchy.get();
+            assertSame(first, hierarchy.get());
+            assertFalse(first.isDescendant(node("F"), node("A")));
+
+            graph.add(Triple.create(node("E"), CHILD, node("F")));
+            assertTrue(hierarchy.get().isDescendant(node("F"), node("A")));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.asteroid.duck.jena.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InternPoolTest {
+
+    @Test
+    public void internSharesInstances() {
+        InternPool<String> subject = new InternPool<>(64);
+        String a = new String("http://example.org/test#A");
+        String b = new String("http://example.org/test#A");
+        assertNotSame(a, b);
+        assertSame(a, subject.intern(a));
+        assertSame(a, subject.intern(b));
+        assertNull(subject.intern(null));
+        assertEquals(1, subject.size());
+        assertEquals(1, subject.hits());
+        assertEquals(1, subject.misses());
+    }
+
+    @Test
+    public void boundedByEviction() {
+        InternPool<Integer> subject = new InternPool<>(64);
+        for (int i = 0; i < 1000; i++) {
+            subject.intern(i);
+        }
+        assertTrue(subject.size() <= subject.maxSize());
+        assertEquals(1000 - subject.size(), subject.evictions());
+        subject.clear();
+        assertEquals(0, subject.size());
+        assertEquals(0, subject.misses());
+    }
+}
@@ -0,0 +1,92 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class NodeDistinctTest {
+
+    private static Node node(int i) {
+        switch (i % 3) {
+            case 0: return NodeFactory.createURI("http://example.org/test#" + i);
+            case 1: return NodeFactory.createLiteral("value " + i, "en");
+            default: return NodeFactory.createBlankNode("b" + i);
+        }
+    }
+
+    private static void assertDistinct(NodeDistinct set) {
+        try(NodeDistinct s = set) {
+            // every value is added twice, far enough apart that exact mode reads some back from the file
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < 50_000; i++) {
+                    assertEquals(pass == 0, s.add(node(i)));
+                }
+            }
+            assertTrue(s.add((Node) null));
+            assertFalse(s.add((Node) null));
+            assertEquals(50_001, s.size());
+            assertEquals(0, s.collisions());
+        }
+    }
+
+    @Test
+    public void approximate() {
+        NodeDistinct set = NodeDistinct.approximate(10);
+        assertFalse(set.isExact());
+        assertDistinct(set);
+    }
+
+    @Test
+    public void exact() {
+        NodeDistinct set = NodeDistinct.exact(10, null);
+        assertTrue(set.isExact());
+        assertDistinct(set);
+    }
+
+    @Test
+    public void exactLargeValues() {
+        try(NodeDistinct set = NodeDistinct.exact(10, null)) {
+            // values bigger than the read buffer, flushed to the file before they are seen again
+            String padding = String.join("", Collections.nCopies(10_000, "x"));
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals(pass == 0, set.add(NodeFactory.createLiteral(padding + i), node(i)));
+                }
+            }
+            assertEquals(20, set.size());
+        }
+    }
+
+    @Test
+    public void streams() {
+        Model model = ModelFactory.createDefaultModel();
+        List<Resource> resources = IntStream.range(0, 1000)
+                .mapToObj(i -> model.createResource("http://example.org/test#" + (i % 10)))
+                .collect(Collectors.toList());
+        try(Stream<Resource> distinct = NodeDistinct.distinct(resources.parallelStream())) {
+            assertEquals(10, distinct.count());
+        }
+        try(Stream<Resource> distinct = NodeDistinct.distinctExact(resources.stream(), Resource::asNode, null)) {
+            assertEquals(10, distinct.count());
+        }
+
+        List<Statement> statements = resources.stream()
+                .map(r -> model.createStatement(r, model.createProperty("http://example.org/test#p"), "x"))
+                .collect(Collectors.toList());
+        try(Stream<Statement> distinct = NodeDistinct.distinctStatementsExact(statements.stream(), null)) {
+            assertEquals(10, distinct.count());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PartitionedScanTest {
+    private static final String TEST_NS = "http://example.org/test#";
+
+    private static Model model(int subjects) {
+        Model model = ModelFactory.createDefaultModel();
+        Property p = model.createProperty(TEST_NS + "p");
+        Property q = model.createProperty(TEST_NS + "q");
+        for (int i = 0; i < subjects; i++) {
+            model.add(model.createResource(TEST_NS + i), p, "value " + i);
+            model.addLiteral(model.createResource(TEST_NS + i), q, i);
+        }
+        return model;
+    }
+
+    @Test
+    public void partitions() {
+        Graph graph = model(1001).getGraph();
+        List<List<Node>> partitions = PartitionedScan.partitions(graph, 4);
+        assertEquals(4, partitions.size());
+        Set<Node> all = new HashSet<>();
+        for (List<Node> partition : partitions) {
+            assertTrue(partition.size() >= 250 && partition.size() <= 251);
+            all.addAll(partition);
+        }
+        assertEquals(1001, all.size());
+        assertEquals(1, PartitionedScan.partitions(model(1).getGraph(), 4).size());
+    }
+
+    @Test
+    public void scan() {
+        Graph graph = model(1000).getGraph();
+        Long count = PartitionedScan.scan(graph, 4, triples -> triples.count(), Long::sum);
+        assertEquals(2000L, count.longValue());
+        assertEquals(2000L, PartitionedScan.stream(graph).count());
+        assertEquals(1000L, PartitionedScan.stream(graph).filter(TripleStream.HAS_LITERAL_OBJECT)
+                .filter(t -> t.getPredicate().getLocalName().equals("p")).count());
+        assertNull(PartitionedScan.scan(ModelFactory.createDefaultModel().getGraph(), 4, triples -> triples.count(), Long::sum));
+    }
+
+    @Test
+    public void scanDataset() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        dataset.begin(org.apache.jena.query.ReadWrite.WRITE);
+        RDFDataMgr.read(dataset.getDefaultModel(), PartitionedScanTest.class.getResourceAsStream("/test.ttl"), Lang.TTL);
+        dataset.commit();
+        dataset.end();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Set<Node> subjects = PartitionedScan.scan(dataset, 3, executor, triples -> {
+                Set<Node> set = new HashSet<>();
+                triples.map(Triple::getSubject).forEach(set::add);
+                return set;
+            }, (a, b) -> {
+                a.addAll(b);
+                return a;
+            });
+            // test:Class and test:A to test:E
+            assertEquals(6, subjects.size());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
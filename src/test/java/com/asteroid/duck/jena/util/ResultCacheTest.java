@@ -0,0 +1,120 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.txn.JenaTransaction;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+    private static final String TEST_NS = "http://example.org/test#";
+    private static final String QUERY = "PREFIX test: <" + TEST_NS + "> SELECT ?a WHERE { ?a a test:Class }";
+
+    private Dataset dataset;
+    private ResultCache subject;
+
+    @Before
+    public void setup() {
+        dataset = DatasetFactory.createTxnMem();
+        JenaTransaction.writeWithCommit(() -> {
+            RDFDataMgr.read(dataset.getDefaultModel(), ResultCacheTest.class.getResourceAsStream("/test.ttl"), Lang.TTL);
+            return null;
+        }, dataset);
+        subject = new ResultCache(1024 * 1024);
+    }
+
+    @After
+    public void teardown() {
+        subject.close();
+    }
+
+    private List<String> select(String query) {
+        return JenaTransaction.readWith(() -> {
+            ResultSetRewindable results = subject.select(query, dataset);
+            assertEquals(results.size(), ResultStream.stream(results).count());
+            results.reset();
+            return ResultStream.streamResourceURIs(results, "a").collect(Collectors.toList());
+        }, dataset);
+    }
+
+    @Test
+    public void hitsAfterFirstQuery() {
+        assertEquals(5, select(QUERY).size());
+        // the same query - formatted differently
+        assertEquals(5, select(QUERY.replace(" ", "  ")).size());
+        assertEquals(1, subject.misses());
+        assertEquals(1, subject.hits());
+        assertEquals(0.5, subject.hitRatio(), 0.0);
+        assertEquals(1, subject.size());
+        assertTrue(subject.bytes() > 0);
+    }
+
+    @Test
+    public void invalidatedByCommit() {
+        assertEquals(5, select(QUERY).size());
+        JenaTransaction.writeWithCommit(() -> {
+            Model model = dataset.getDefaultModel();
+            model.add(ResourceFactory.createResource(TEST_NS + "F"), RDF.type, ResourceFactory.createResource(TEST_NS + "Class"));
+            return null;
+        }, dataset);
+        assertEquals(0, subject.size());
+        assertEquals(1, subject.invalidations());
+        assertEquals(6, select(QUERY).size());
+        assertEquals(2, subject.misses());
+    }
+
+    @Test
+    public void invalidatedByCommitThroughAnotherWrapper() {
+        assertEquals(5, select(QUERY).size());
+        Dataset wrapper = DatasetFactory.wrap(dataset.asDatasetGraph());
+        JenaTransaction.writeWithCommit(() -> {
+            wrapper.getDefaultModel().add(ResourceFactory.createResource(TEST_NS + "F"), RDF.type, ResourceFactory.createResource(TEST_NS + "Class"));
+            return null;
+        }, wrapper);
+        assertEquals(0, subject.size());
+        assertEquals(6, select(QUERY).size());
+        // and results are shared between the wrappers
+        JenaTransaction.readWith(() -> subject.select(QUERY, wrapper), wrapper);
+        assertEquals(1, subject.hits());
+    }
+
+    @Test
+    public void notCachedFromAbortedWrite() {
+        JenaTransaction.runWith(txn -> {
+            dataset.getDefaultModel().add(ResourceFactory.createResource(TEST_NS + "F"), RDF.type, ResourceFactory.createResource(TEST_NS + "Class"));
+            assertEquals(6, subject.select(QUERY, dataset).size());
+            txn.abort();
+            return null;
+        }, dataset, ReadWrite.WRITE);
+        assertEquals(0, subject.size());
+        assertEquals(5, select(QUERY).size());
+        assertEquals(2, subject.misses());
+    }
+
+    @Test
+    public void evictsToBudget() {
+        try (ResultCache small = new ResultCache(600)) {
+            JenaTransaction.runWith(txn -> {
+                small.select(QUERY, dataset);
+                small.select(QUERY + " LIMIT 4", dataset);
+                small.select(QUERY + " LIMIT 3", dataset);
+                return null;
+            }, dataset, ReadWrite.READ);
+            assertTrue(small.bytes() <= 600);
+            assertTrue(small.evictions() > 0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ResultDiffTest {
+    private static final Var S = Var.alloc("s");
+    private static final Var O = Var.alloc("o");
+
+    private static Binding row(String s, String o) {
+        BindingMap row = BindingFactory.create();
+        row.add(S, NodeFactory.createURI("http://example.org/test#" + s));
+        if (o != null) {
+            row.add(O, NodeFactory.createLiteral(o));
+        }
+        return row;
+    }
+
+    private static ResultSet results(Binding... rows) {
+        List<Binding> list = new ArrayList<>(Arrays.asList(rows));
+        return new ResultSetStream(Arrays.asList("s", "o"), ModelFactory.createDefaultModel(), list.iterator());
+    }
+
+    private static List<String> subjects(List<Binding> rows) {
+        return rows.stream().map(b -> b.get(S).getLocalName()).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void diff() {
+        try(ResultDiff diff = ResultDiff.create()) {
+            ResultDiff.Delta first = diff.diff(results(row("A", "1"), row("B", "2"), row("C", null)));
+            assertEquals(Arrays.asList("A", "B", "C"), subjects(first.getAdded()));
+            assertTrue(first.getRemoved().isEmpty());
+
+            ResultDiff.Delta same = diff.diff(results(row("C", null), row("A", "1"), row("B", "2")));
+            assertTrue(same.isEmpty());
+            assertEquals(3, same.getRowCount());
+
+            ResultDiff.Delta changed = diff.diff(results(row("A", "1"), row("B", "3"), row("D", "4")));
+            assertEquals(Arrays.asList("B", "D"), subjects(changed.getAdded()));
+            assertEquals(Arrays.asList("B", "C"), subjects(changed.getRemoved()));
+            Binding removedB = changed.getRemoved().stream().filter(b -> b.get(O) != null).findFirst().get();
+            assertEquals("2", removedB.get(O).getLiteralLexicalForm());
+        }
+    }
+
+    @Test
+    public void duplicates() {
+        try(ResultDiff diff = ResultDiff.create()) {
+            diff.diff(results(row("A", "1"), row("A", "1")));
+            ResultDiff.Delta delta = diff.diff(results(row("A", "1")));
+            assertTrue(delta.getAdded().isEmpty());
+            assertEquals(Arrays.asList("A"), subjects(delta.getRemoved()));
+        }
+    }
+
+    @Test
+    public void interruptedRun() throws Exception {
+        Path directory = Files.createTempDirectory("diff-test");
+        try {
+            try(ResultDiff diff = ResultDiff.open(directory)) {
+                diff.diff(results(row("A", "1"), row("B", "2")));
+            }
+            // a run that never finished leaves the previous state in place
+            Files.write(directory.resolve("rows.dat.new"), new byte[] { 1, 2, 3 });
+            try(ResultDiff diff = ResultDiff.open(directory)) {
+                assertEquals(2, diff.getPreviousRowCount());
+                assertEquals(Arrays.asList("C"), subjects(diff.diff(results(row("A", "1"), row("B", "2"), row("C", "3"))).getAdded()));
+            }
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void fingerprintsWithoutRows() throws Exception {
+        Path directory = Files.createTempDirectory("diff-test");
+        try {
+            // state left by an older layout, with fingerprints in a file of their own
+            Files.write(directory.resolve("fingerprints.dat"), new byte[] { 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 7 });
+            try(ResultDiff diff = ResultDiff.open(directory)) {
+                assertEquals(0, diff.getPreviousRowCount());
+                ResultDiff.Delta delta = diff.diff(results(row("A", "1")));
+                assertEquals(Arrays.asList("A"), subjects(delta.getAdded()));
+                assertTrue(delta.getRemoved().isEmpty());
+            }
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        try(java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void persisted() throws Exception {
+        Path directory = Files.createTempDirectory("diff-test");
+        try {
+            try(ResultDiff diff = ResultDiff.open(directory)) {
+                diff.diff(results(row("A", "1"), row("B", "2")));
+            }
+            try(ResultDiff diff = ResultDiff.open(directory)) {
+                assertEquals(2, diff.getPreviousRowCount());
+                ResultDiff.Delta delta = diff.diff(results(row("B", "2")));
+                assertTrue(delta.getAdded().isEmpty());
+                assertEquals(Arrays.asList("A"), subjects(delta.getRemoved()));
+            }
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+}
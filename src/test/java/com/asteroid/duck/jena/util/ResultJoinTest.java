@@ -0,0 +1,129 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ResultJoinTest {
+    private static final Var S = Var.alloc("s");
+    private static final Var A = Var.alloc("a");
+    private static final Var B = Var.alloc("b");
+
+    private static Node key(int i) {
+        return NodeFactory.createURI(String.format("http://example.org/%05d", i));
+    }
+
+    /** 0..99 bound to ?a */
+    private static List<Binding> left() {
+        List<Binding> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            BindingMap row = BindingFactory.create();
+            row.add(S, key(i));
+            row.add(A, NodeFactory.createLiteral("a" + i));
+            rows.add(row);
+        }
+        // a row with no key is ignored
+        rows.add(BindingFactory.binding(A, NodeFactory.createLiteral("none")));
+        return rows;
+    }
+
+    /** even numbers 0..198 bound to ?b, twice each */
+    private static List<Binding> right() {
+        List<Binding> rows = new ArrayList<>();
+        for (int i = 0; i < 200; i += 2) {
+            for (int j = 0; j < 2; j++) {
+                BindingMap row = BindingFactory.create();
+                row.add(S, key(i));
+                row.add(B, NodeFactory.createLiteral("b" + i + "." + j));
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static void assertJoined(List<Binding> results) {
+        assertEquals(100, results.size());
+        for (Binding row : results) {
+            int key = Integer.parseInt(row.get(S).getURI().substring("http://example.org/".length()));
+            assertEquals(0, key % 2);
+            assertEquals("a" + key, row.get(A).getLiteralLexicalForm());
+            assertTrue(row.get(B).getLiteralLexicalForm().startsWith("b" + key + "."));
+        }
+    }
+
+    @Test
+    public void mergeJoin() {
+        List<Binding> left = left();
+        // unbound key rows must not break the order check
+        Collections.rotate(left, 1);
+        List<Binding> results = ResultJoin.mergeJoin(left.stream(), right().stream(), "s").collect(Collectors.toList());
+        assertJoined(results);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mergeJoinUnsorted() {
+        List<Binding> left = left();
+        Collections.reverse(left);
+        ResultJoin.mergeJoin(left.stream(), right().stream(), "s").count();
+    }
+
+    @Test
+    public void hashJoinInMemory() {
+        assertJoined(ResultJoin.hashJoin(left().stream(), right().stream(), "s", 1000).collect(Collectors.toList()));
+        // build on the (smaller) left
+        assertJoined(ResultJoin.hashJoin(right().stream(), left().stream(), "s", 150).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void hashJoinSpills() {
+        try (Stream<Binding> joined = ResultJoin.hashJoin(left().stream(), right().stream(), "s", 10)) {
+            assertJoined(joined.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void hashJoinSkewed() throws Exception {
+        // 1000 build rows with a cap of 10 (more than 32 times over), half of them on one key
+        List<Binding> build = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            BindingMap row = BindingFactory.create();
+            row.add(S, key(i % 2 == 0 ? 0 : i));
+            row.add(A, NodeFactory.createLiteral("a" + i));
+            build.add(row);
+        }
+        List<Binding> probe = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            probe.add(BindingFactory.binding(S, key(i)));
+        }
+        Path directory = Files.createTempDirectory("join-test");
+        try {
+            try (Stream<Binding> joined = ResultJoin.hashJoin(build.stream(), probe.stream(), "s", 10, directory)) {
+                List<Binding> results = joined.collect(Collectors.toList());
+                // 500 rows on the hot key, and each odd key once
+                assertEquals(1000, results.size());
+                assertEquals(500, results.stream().filter(row -> row.get(S).equals(key(0))).count());
+                assertEquals(500, results.stream().map(row -> row.get(S)).filter(s -> !s.equals(key(0))).distinct().count());
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        }
+        finally {
+            Files.delete(directory);
+        }
+    }
+}
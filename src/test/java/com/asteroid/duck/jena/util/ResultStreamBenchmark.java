@@ -0,0 +1,82 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A simple (non JUnit) benchmark comparing parallel processing of a large {@link ResultSet}
+ * via {@link ResultStream#stream(ResultSet)} against the plain {@link Spliterators#spliteratorUnknownSize}
+ * wrapping it used to do.
+ *
+ * Run the main method with an optional row count argument (default 1,000,000).
+ */
+public class ResultStreamBenchmark {
+    private static final String NS = "http://example.org/bench#";
+    private static final Var VAR = Var.alloc("a");
+    private static final int ROUNDS = 5;
+
+    private static ResultSet syntheticResultSet(final int rows) {
+        Iterator<Binding> bindings = new Iterator<Binding>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Binding next() {
+                Node node = NodeFactory.createURI(NS + (row++));
+                return BindingFactory.binding(VAR, node);
+            }
+        };
+        return new ResultSetStream(Collections.singletonList(VAR.getVarName()), ModelFactory.createDefaultModel(), bindings);
+    }
+
+    private static Stream<QuerySolution> legacy(ResultSet resultSet) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(resultSet, 0), false);
+    }
+
+    /** Some CPU bound work per row to be spread across threads */
+    private static long work(QuerySolution solution) {
+        String uri = solution.getResource(VAR.getVarName()).getURI();
+        long hash = 0;
+        for (int i = 0; i < 50; i++) {
+            hash = hash * 31 + uri.hashCode() + i;
+        }
+        return hash;
+    }
+
+    private static long time(Stream<QuerySolution> stream) {
+        long start = System.nanoTime();
+        long result = stream.parallel().mapToLong(ResultStreamBenchmark::work).sum();
+        long elapsed = System.nanoTime() - start;
+        if (result == 42) {
+            System.out.println("(unlikely)");
+        }
+        return elapsed / 1_000_000;
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("Rows: " + rows + ", cores: " + Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < ROUNDS; round++) {
+            long legacy = time(legacy(syntheticResultSet(rows)));
+            long batched = time(ResultStream.stream(syntheticResultSet(rows)));
+            System.out.println("Round " + round + ": legacy=" + legacy + "ms, batched=" + batched + "ms");
+        }
+    }
+}
@@ -1,21 +1,30 @@
 package com.asteroid.duck.jena.util;
 
 import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.Var;
 import org.junit.Test;
+import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ResultStreamTest {
@@ -90,6 +99,206 @@ public class ResultStreamTest {
         assertResultEqual(EXPECTED_C, Arrays.asList(cValues));
     }
 
+    @Test
+    public void streamNodes() {
+        List<String> results = ResultStream.streamNodes(testResultSet(), "a")
+                .filter(Node::isURI)
+                .map(Node::getURI)
+                .collect(Collectors.toList());
+        assertResultEqual(EXPECTED_A, results);
+    }
+
+    @Test
+    public void streamNodeTuples() {
+        List<Node[]> results = ResultStream.streamNodeTuples(testResultSet(), "c", "a")
+                .collect(Collectors.toList());
+        assertEquals(EXPECTED_A.length, results.size());
+        for (Node[] row : results) {
+            assertEquals(2, row.length);
+            assertEquals(TEST_NS + row[0].getLiteralLexicalForm(), row[1].getURI());
+        }
+        // a single variable is still a tuple
+        assertEquals(1, ResultStream.streamNodeTuples(testResultSet(), new String[] { "a" }).findFirst().get().length);
+    }
+
+    @Test
+    public void cursor() {
+        ResultCursor cursor = ResultStream.cursor(testResultSet());
+        assertEquals(3, cursor.getColumnCount());
+        assertEquals(1, cursor.findColumn("b"));
+        assertEquals(-1, cursor.findColumn("z"));
+
+        List<ResultRow> copies = new ArrayList<>();
+        while (cursor.next()) {
+            String a = cursor.getURI("a");
+            assertEquals(TEST_NS + cursor.getLexicalForm(2), a);
+            assertEquals(cursor.getNode(0), cursor.getNode("a"));
+            copies.add(cursor.copy());
+        }
+        assertEquals(EXPECTED_A.length, cursor.getRowNumber());
+        assertResultEqual(EXPECTED_A, copies.stream().map(row -> row.getURI(0)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void streamDoubles() {
+        assertEquals(6.0, ResultStream.streamDoubles(testResultSet(), "b").sum(), 0.0);
+        // labels are not numeric
+        assertEquals(0, ResultStream.streamDoubles(testResultSet(), "c").count());
+        assertEquals(-5.0, ResultStream.streamDoubles(testResultSet(), "c", NumericPolicy.DEFAULT, -1.0).sum(), 0.0);
+        assertEquals(EXPECTED_B.length, ResultStream.streamDoubles(testResultSet(), "b", NumericPolicy.FAIL, 0.0).count());
+    }
+
+    @Test(expected = NonNumericValueException.class)
+    public void streamDoublesFail() {
+        ResultStream.streamDoubles(testResultSet(), "c", NumericPolicy.FAIL, 0.0).sum();
+    }
+
+    @Test(expected = NonNumericValueException.class)
+    public void streamDoublesFailCount() {
+        // the size is not reported, so count() must read (and check) every row
+        ResultStream.streamDoubles(testResultSet(), "c", NumericPolicy.FAIL, 0.0).count();
+    }
+
+    @Test
+    public void streamDoublesSized() {
+        assertTrue(ResultStream.streamDoubles(testResultSet(), "b", NumericPolicy.DEFAULT, 0.0).spliterator()
+                .hasCharacteristics(Spliterator.SIZED));
+        assertFalse(ResultStream.streamDoubles(testResultSet(), "b", NumericPolicy.FAIL, 0.0).spliterator()
+                .hasCharacteristics(Spliterator.SIZED));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void streamDoublesConsumerFailure() {
+        // thrown downstream, so not mistaken for a non-numeric value
+        ResultStream.streamDoubles(testResultSet(), "b").forEach(d -> {
+            throw new NumberFormatException("downstream");
+        });
+    }
+
+    @Test
+    public void streamLongs() {
+        // the weights are doubles with a decimal point, so not valid integers
+        assertEquals(0, ResultStream.streamLongs(testResultSet(), "b").count());
+        assertEquals(5, ResultStream.streamInts(testResultSet(), "b", NumericPolicy.DEFAULT, 1).sum());
+    }
+
+    public static class Row {
+        private String a;
+        private double b;
+        private String c;
+    }
+
+    @Test
+    public void streamAs() {
+        List<Row> rows = ResultStream.streamAs(testResultSet(), Row.class).collect(Collectors.toList());
+        assertResultEqual(EXPECTED_A, rows.stream().map(row -> row.a).collect(Collectors.toList()));
+        assertResultEqual(EXPECTED_C, rows.stream().map(row -> row.c).collect(Collectors.toList()));
+        assertEquals(6.0, rows.stream().mapToDouble(row -> row.b).sum(), 0.0);
+    }
+
+    @Test
+    public void executionClosedWhenExhausted() {
+        QueryExecution execution = Mockito.mock(QueryExecution.class);
+        Mockito.when(execution.execSelect()).thenReturn(testResultSet());
+        List<String> results = ResultStream.streamResourceURIs(execution, "a").collect(Collectors.toList());
+        assertResultEqual(EXPECTED_A, results);
+        Mockito.verify(execution).close();
+        Mockito.verify(execution, Mockito.never()).abort();
+    }
+
+    @Test
+    public void executionAbortedWhenClosedEarly() {
+        QueryExecution execution = Mockito.mock(QueryExecution.class);
+        Mockito.when(execution.execSelect()).thenReturn(testResultSet());
+        try (Stream<QuerySolution> stream = ResultStream.stream(execution)) {
+            assertTrue(stream.findFirst().isPresent());
+        }
+        Mockito.verify(execution).abort();
+        Mockito.verify(execution).close();
+    }
+
+    @Test
+    public void toColumnar() {
+        ColumnarResults results = ResultStream.toColumnar(testResultSet());
+        assertEquals(EXPECTED_A.length, results.rowCount());
+        assertEquals(Arrays.asList(EXPECTED_KEYS), results.getResultVars());
+
+        ColumnarResults.Column a = results.column("a");
+        ColumnarResults.Column b = results.column("b");
+        assertEquals(EXPECTED_A.length, a.countDistinct());
+        assertEquals(3, b.countDistinct());
+        assertFalse(b.hasLongs());
+        assertEquals(6.0, b.sum(), 0.0);
+        assertEquals(0.0, b.min(null), 0.0);
+        assertEquals(2.0, b.max(null), 0.0);
+        assertEquals(1.2, b.average(null), 0.000001);
+        // labels are not numeric
+        ColumnarResults.Column c = results.column("c");
+        assertFalse(c.hasNumbers());
+        assertTrue(b.hasNumbers());
+        assertEquals(0, c.countNumeric(null));
+        assertTrue(Double.isNaN(c.getDouble(0)));
+        assertEquals(EXPECTED_A.length, c.doubles().filter(Double::isNaN).count());
+        assertEquals(0.0, c.sum(), 0.0);
+        assertTrue(Double.isNaN(c.average(null)));
+        assertEquals(0, c.selectRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).cardinality());
+
+        BitSet heavy = b.selectRange(1.5, 10);
+        assertEquals(2, heavy.cardinality());
+        BitSet isB = a.selectEquals(NodeFactory.createURI(TEST_NS + "B"));
+        assertEquals(1, isB.cardinality());
+        assertEquals(1.0, b.sum(isB), 0.0);
+    }
+
+    @Test
+    public void streamInternedURIs() {
+        InternPool<String> pool = new InternPool<>(100);
+        List<String> first = ResultStream.streamResourceURIs(testResultSet(), "a", pool).collect(Collectors.toList());
+        List<String> second = ResultStream.streamResourceURIs(testResultSet(), "a", pool).collect(Collectors.toList());
+        assertResultEqual(EXPECTED_A, first);
+        for (String uri : second) {
+            assertTrue(first.stream().anyMatch(s -> s == uri));
+        }
+        assertEquals(EXPECTED_A.length, pool.misses());
+        assertEquals(EXPECTED_A.length, pool.hits());
+        assertEquals(0.5, pool.hitRatio(), 0.0);
+    }
+
+    @Test
+    public void aggregate() {
+        Map<List<Node>, AggregateGroup> groups = ResultStream.aggregate(testResultSet(), Arrays.asList("b"),
+                Aggregate.count(), Aggregate.approxDistinct("c"));
+        assertEquals(3, groups.size());
+        AggregateGroup heaviest = groups.get(Arrays.asList(NodeFactory.createLiteral("2.0", XSDDatatype.XSDdouble)));
+        assertEquals(2L, heaviest.get(0));
+        assertEquals(2L, heaviest.get(1));
+    }
+
+    @Test
+    public void topK() {
+        List<String> heaviest = ResultStream.streamBindings(testResultSet())
+                .collect(TopK.largest(2, NodeComparators.byVariable("b", NodeComparators.numeric())))
+                .stream()
+                .map(binding -> binding.get(Var.alloc("c")).getLiteralLexicalForm())
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("D", "E"), heaviest);
+    }
+
+    @Test
+    public void streamParallel() {
+        ResultSet resultSet = testResultSet();
+        Spliterator<QuerySolution> spliterator = ResultStream.stream(resultSet).spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+        assertEquals(EXPECTED_A.length, spliterator.estimateSize());
+
+        List<String> results = ResultStream.streamResourceURIs(testResultSet(), "a")
+                .parallel()
+                .collect(Collectors.toList());
+        assertResultEqual(EXPECTED_A, results);
+    }
+
     public static <T> void assertResultEqual(T[] expected, Collection<T> actual) {
         assertEquals(expected.length, actual.size());
         for(T a : expected) {
@@ -0,0 +1,111 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResultWriterTest {
+    private static final Var S = Var.alloc("s");
+    private static final Var O = Var.alloc("o");
+
+    private static List<Binding> rows(int n) {
+        List<Binding> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            BindingMap row = BindingFactory.create();
+            row.add(S, NodeFactory.createURI("http://example.org/test#" + (i % 7)));
+            switch (i % 4) {
+                case 0: row.add(O, NodeFactory.createLiteral("plain, \"quoted\"\n\ttext \u00e9 \ud83d\ude00 " + i)); break;
+                case 1: row.add(O, NodeFactory.createLiteral("bonjour", "fr")); break;
+                case 2: row.add(O, NodeFactory.createLiteral(Integer.toString(i), XSDDatatype.XSDinteger)); break;
+                default: break;
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static byte[] write(ResultWriter.Format format, List<Binding> rows, int bufferSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(ResultWriter writer = new ResultWriter(format, Arrays.asList("s", "o"), Channels.newChannel(out), bufferSize, 4)) {
+            assertEquals(rows.size(), writer.write(rows.stream()));
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertSameRows(List<Binding> expected, ResultSet actual) {
+        ResultSetRewindable copy = ResultSetFactory.copyResults(actual);
+        assertEquals(Arrays.asList("s", "o"), copy.getResultVars());
+        assertEquals(expected.size(), copy.size());
+        for (Binding row : expected) {
+            Binding read = copy.nextBinding();
+            assertEquals(row.get(S), read.get(S));
+            assertEquals(row.get(O), read.get(O));
+        }
+    }
+
+    @Test
+    public void json() {
+        List<Binding> rows = rows(500);
+        // small buffer forces many flushes, including part way through strings and cached URIs
+        byte[] bytes = write(ResultWriter.Format.JSON, rows, 64);
+        assertSameRows(rows, ResultSetFactory.fromJSON(new ByteArrayInputStream(bytes)));
+        assertEquals(new String(bytes, StandardCharsets.UTF_8),
+                new String(write(ResultWriter.Format.JSON, rows, ResultWriter.DEFAULT_BUFFER_SIZE), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void tsv() {
+        List<Binding> rows = rows(500);
+        byte[] bytes = write(ResultWriter.Format.TSV, rows, 64);
+        assertSameRows(rows, ResultSetFactory.fromTSV(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void csv() {
+        String csv = new String(write(ResultWriter.Format.CSV, rows(3), 64), StandardCharsets.UTF_8);
+        assertEquals("s,o\r\n" +
+                "http://example.org/test#0,\"plain, \"\"quoted\"\"\n\ttext \u00e9 \ud83d\ude00 0\"\r\n" +
+                "http://example.org/test#1,bonjour\r\n" +
+                "http://example.org/test#2,2\r\n", csv);
+    }
+
+    @Test
+    public void suppliedBuffer() {
+        List<Binding> rows = rows(100);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        for (ResultWriter.Format format : ResultWriter.Format.values()) {
+            // one buffer reused by each writer in turn
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try(ResultWriter writer = new ResultWriter(format, Arrays.asList("s", "o"), Channels.newChannel(out), buffer, 4)) {
+                writer.write(rows.stream());
+            }
+            assertArrayEquals(write(format, rows, 64), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void empty() {
+        String json = new String(write(ResultWriter.Format.JSON, new ArrayList<>(), 64), StandardCharsets.UTF_8);
+        assertEquals("{\"head\":{\"vars\":[\"s\",\"o\"]},\"results\":{\"bindings\":[]}}\n", json);
+    }
+}
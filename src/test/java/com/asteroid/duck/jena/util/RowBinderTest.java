@@ -0,0 +1,124 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowBinderTest {
+
+    public static class Bean {
+        private String a;
+        private double b;
+        private Literal c;
+        private Integer count;
+
+        private Bean() {
+        }
+
+        public void setCount(Integer count) {
+            this.count = count * 10;
+        }
+    }
+
+    public static class Unsupported {
+        private Object a;
+    }
+
+    public static class Overloaded {
+        private String a;
+        private Node b;
+        private String c;
+
+        public void setA(String a) {
+            this.a = a;
+        }
+
+        public void setA(double a) {
+            this.a = "double";
+        }
+
+        public void setB(Node b) {
+            this.b = b;
+        }
+
+        public void setB(String b) {
+            this.b = null;
+        }
+
+        public void setC(String c) {
+            this.c = c;
+        }
+
+        public void setC(Object c) {
+            this.c = "object";
+        }
+    }
+
+    @Test
+    public void bind() {
+        List<String> vars = Arrays.asList("a", "b", "c", "count", "other");
+        BindingMap binding = BindingFactory.create();
+        binding.add(Var.alloc("a"), NodeFactory.createURI("http://example.org/test#A"));
+        binding.add(Var.alloc("b"), NodeFactory.createLiteral("1.5", XSDDatatype.XSDdouble));
+        binding.add(Var.alloc("count"), NodeFactory.createLiteral("3", XSDDatatype.XSDinteger));
+
+        RowBinder<Bean> binder = RowBinder.of(vars, Bean.class);
+        assertSame(binder, RowBinder.of(vars, Bean.class));
+
+        Bean bean = binder.bind(binding);
+        assertEquals("http://example.org/test#A", bean.a);
+        assertEquals(1.5, bean.b, 0.0);
+        assertNull(bean.c);
+        assertEquals(Integer.valueOf(30), bean.count);
+    }
+
+    @Test
+    public void literalMember() {
+        Node label = NodeFactory.createLiteral("x");
+        BindingMap binding = BindingFactory.create();
+        binding.add(Var.alloc("c"), label);
+        Bean bean = RowBinder.compile(Collections.singletonList("c"), Bean.class).apply(binding);
+        assertEquals("x", bean.c.getLexicalForm());
+    }
+
+    @Test
+    public void overloadedSetters() {
+        Node uri = NodeFactory.createURI("http://example.org/test#A");
+        BindingMap binding = BindingFactory.create();
+        binding.add(Var.alloc("b"), uri);
+        binding.add(Var.alloc("c"), uri);
+        Overloaded bean = RowBinder.compile(Arrays.asList("b", "c"), Overloaded.class).bind(binding);
+        // the Node overload is preferred, the unsupported Object overload is passed over
+        assertEquals(uri, bean.b);
+        assertEquals("http://example.org/test#A", bean.c);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ambiguousSetter() {
+        RowBinder.compile(Collections.singletonList("a"), Overloaded.class);
+    }
+
+    @Test
+    public void cachedPerClass() {
+        List<String> vars = Arrays.asList("b", "c");
+        RowBinder<Overloaded> binder = RowBinder.of(vars, Overloaded.class);
+        assertSame(binder, RowBinder.of(Arrays.asList("b", "c"), Overloaded.class));
+        assertNotSame(binder, RowBinder.of(Collections.singletonList("b"), Overloaded.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedType() {
+        RowBinder.compile(Collections.singletonList("a"), Unsupported.class);
+    }
+}
@@ -0,0 +1,90 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SpillingResultSetTest {
+    private static final Var S = Var.alloc("s");
+    private static final Var O = Var.alloc("o");
+
+    private static List<Binding> rows(int count) {
+        List<Binding> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BindingMap binding = BindingFactory.create();
+            binding.add(S, i % 2 == 0 ? NodeFactory.createURI("http://example.org/" + i) : NodeFactory.createBlankNode("b" + i));
+            if (i % 3 == 0) {
+                binding.add(O, NodeFactory.createLiteral("label " + i, "en"));
+            }
+            else if (i % 3 == 1) {
+                binding.add(O, NodeFactory.createLiteral(Integer.toString(i), XSDDatatype.XSDinteger));
+            }
+            rows.add(binding);
+        }
+        return rows;
+    }
+
+    private static ResultSet resultSet(List<Binding> rows) {
+        return new ResultSetStream(Arrays.asList("s", "o"), ModelFactory.createDefaultModel(), rows.iterator());
+    }
+
+    @Test
+    public void spillAndRewind() {
+        List<Binding> expected = rows(1000);
+        try (SpillingResultSet subject = SpillingResultSet.copy(resultSet(expected), 10)) {
+            assertEquals(1000, subject.size());
+            assertEquals(990, subject.spilledRows());
+            assertEquals(Arrays.asList("s", "o"), subject.getResultVars());
+
+            for (int pass = 0; pass < 2; pass++) {
+                int row = 0;
+                while (subject.hasNext()) {
+                    assertBindingEquals(expected.get(row++), subject.nextBinding());
+                }
+                assertEquals(expected.size(), row);
+                subject.reset();
+            }
+
+            assertBindingEquals(expected.get(500), subject.getBinding(500));
+            assertBindingEquals(expected.get(3), subject.getBinding(3));
+            assertBindingEquals(expected.get(999), subject.getBinding(999));
+        }
+    }
+
+    @Test
+    public void streamIsSized() {
+        try (SpillingResultSet subject = SpillingResultSet.copy(resultSet(rows(100)), 50)) {
+            assertEquals(100, ResultStream.stream(subject).spliterator().getExactSizeIfKnown());
+            List<Node> subjects = ResultStream.streamNodes(subject, "s").parallel().collect(Collectors.toList());
+            assertEquals(100, subjects.size());
+        }
+    }
+
+    @Test
+    public void fitsInMemory() {
+        try (SpillingResultSet subject = SpillingResultSet.copy(resultSet(rows(5)), 10)) {
+            assertEquals(5, subject.size());
+            assertEquals(0, subject.spilledRows());
+        }
+    }
+
+    private static void assertBindingEquals(Binding expected, Binding actual) {
+        assertEquals(expected.get(S), actual.get(S));
+        assertEquals(expected.get(O), actual.get(O));
+    }
+}
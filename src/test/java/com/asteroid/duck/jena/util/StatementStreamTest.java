@@ -0,0 +1,59 @@
+package com.asteroid.duck.jena.util;
+
+import com.asteroid.duck.jena.util.impl.JenaModelUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class StatementStreamTest {
+    private static final String TEST_NS = "http://example.org/test#";
+
+    private static Model model(int size) {
+        Model model = ModelFactory.createDefaultModel();
+        Property p = model.createProperty(TEST_NS + "p");
+        for (int i = 0; i < size; i++) {
+            model.add(model.createResource(TEST_NS + i), p, "value " + i);
+        }
+        return model;
+    }
+
+    @Test
+    public void lazy() {
+        StmtIterator iterator = Mockito.spy(model(10_000).listStatements());
+        List<Statement> first = JenaModelUtils.list(iterator, 10);
+        assertEquals(10, first.size());
+        verify(iterator, atMost(11)).next();
+        verify(iterator, times(1)).close();
+    }
+
+    @Test
+    public void closedWhenExhausted() {
+        StmtIterator iterator = Mockito.spy(model(100).listStatements());
+        assertEquals(100, StatementStream.fromSeq(iterator).count());
+        verify(iterator, times(1)).close();
+    }
+
+    @Test
+    public void parallel() {
+        Model model = model(10_000);
+        try (Stream<Statement> statements = StatementStream.from(model.listStatements())) {
+            assertEquals(10_000, statements.map(StatementStream::subject).distinct().count());
+        }
+        assertEquals(5000, StatementStream.on(model, null, model.createProperty(TEST_NS + "p"), null)
+                .filter(StatementStream.HAS_LITERAL_OBJECT)
+                .filter(s -> Integer.parseInt(s.getString().substring(6)) % 2 == 0)
+                .count());
+    }
+}
@@ -0,0 +1,44 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The shared test data (<code>/test.ttl</code>): A has children B and C, B has children D and E
+ */
+public class TestData {
+    public static final String TEST_NS = "http://example.org/test#";
+    public static final Node CHILD = NodeFactory.createURI(TEST_NS + "child");
+
+    /**
+     * @return a new model holding the test data
+     */
+    public static Model testModel() {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, TestData.class.getResourceAsStream("/test.ttl"), Lang.TTL);
+        return model;
+    }
+
+    /**
+     * @param name the local name
+     * @return the URI node for a name in the test namespace
+     */
+    public static Node node(String name) {
+        return NodeFactory.createURI(TEST_NS + name);
+    }
+
+    /**
+     * @param nodes some URI nodes
+     * @return their local names, sorted
+     */
+    public static List<String> names(List<Node> nodes) {
+        return nodes.stream().map(Node::getLocalName).sorted().collect(Collectors.toList());
+    }
+}
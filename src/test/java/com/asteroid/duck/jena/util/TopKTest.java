@@ -0,0 +1,47 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TopKTest {
+
+    @Test
+    public void largestAndSmallest() {
+        List<Integer> top = IntStream.range(0, 10_000).boxed().parallel()
+                .collect(TopK.largest(5, Comparator.naturalOrder()));
+        assertEquals(Arrays.asList(9999, 9998, 9997, 9996, 9995), top);
+
+        List<Integer> bottom = IntStream.range(0, 10_000).boxed().parallel()
+                .collect(TopK.smallest(3, Comparator.naturalOrder()));
+        assertEquals(Arrays.asList(0, 1, 2), bottom);
+
+        assertTrue(IntStream.range(0, 10).boxed().collect(TopK.largest(0, Comparator.<Integer>naturalOrder())).isEmpty());
+        assertEquals(10, IntStream.range(0, 10).boxed().collect(TopK.largest(20, Comparator.<Integer>naturalOrder())).size());
+    }
+
+    @Test
+    public void numericNodes() {
+        List<Node> nodes = Arrays.asList("10", "9", "100", "x", "2.5").stream()
+                .map(lex -> NodeFactory.createLiteral(lex, "x".equals(lex) ? XSDDatatype.XSDstring : XSDDatatype.XSDdecimal))
+                .collect(Collectors.toList());
+        List<String> top = nodes.stream()
+                .collect(TopK.largest(3, NodeComparators.numeric()))
+                .stream().map(Node::getLiteralLexicalForm).collect(Collectors.toList());
+        assertEquals(Arrays.asList("100", "10", "9"), top);
+
+        List<String> lexical = nodes.stream()
+                .collect(TopK.largest(3, NodeComparators.lexical()))
+                .stream().map(Node::getLiteralLexicalForm).collect(Collectors.toList());
+        assertEquals(Arrays.asList("x", "9", "2.5"), lexical);
+    }
+}
@@ -0,0 +1,84 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.asteroid.duck.jena.util.TestData.CHILD;
+import static com.asteroid.duck.jena.util.TestData.TEST_NS;
+import static com.asteroid.duck.jena.util.TestData.names;
+import static com.asteroid.duck.jena.util.TestData.node;
+import static com.asteroid.duck.jena.util.TestData.testModel;
+import static org.junit.Assert.assertEquals;
+
+public class TransitiveClosureTest {
+    @Test
+    public void closure() {
+        Model model = testModel();
+        TransitiveClosure closure = TransitiveClosure.over(model, model.createProperty(TEST_NS + "child"));
+        assertEquals(Arrays.asList("B", "C", "D", "E"), names(closure.reachable(node("A"))));
+        assertEquals(Arrays.asList("D", "E"), names(closure.reachable(node("B"))));
+        assertEquals(0, closure.reachable(node("Z")).size());
+        // A reaches 4, B reaches 2
+        assertEquals(6, closure.pairs().count());
+
+        List<String> pairs = closure.pairs(Arrays.asList(node("B"), node("A")))
+                .map(pair -> pair.getKey().getLocalName() + pair.getValue().getLocalName())
+                .collect(Collectors.toList());
+        // grouped by seed, in the order given
+        assertEquals(Arrays.asList("B", "B", "A", "A", "A", "A"),
+                pairs.stream().map(pair -> pair.substring(0, 1)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void depthAndDirection() {
+        CsrGraph csr = CsrGraph.build(testModel().getGraph(), CHILD);
+        TransitiveClosure oneHop = TransitiveClosure.over(csr).maxDepth(1);
+        assertEquals(Arrays.asList("B", "C"), names(oneHop.reachable(node("A"))));
+        // state left by a traversal stopped at the depth limit is not seen by the next
+        assertEquals(Arrays.asList("D", "E"), names(oneHop.reachable(node("B"))));
+        assertEquals(Arrays.asList("B", "C"), names(oneHop.reachable(node("A"))));
+        assertEquals(Arrays.asList("A", "B"), names(TransitiveClosure.over(csr)
+                .direction(CsrGraph.Direction.REVERSE)
+                .reachable(node("E"))));
+    }
+
+    @Test
+    public void cycle() {
+        Graph graph = testModel().getGraph();
+        graph.add(Triple.create(node("E"), CHILD, node("A")));
+        TransitiveClosure closure = TransitiveClosure.over(CsrGraph.build(graph, CHILD));
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), names(closure.reachable(node("A"))));
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), names(closure.reachable(node("E"))));
+        assertEquals(0, closure.reachable(node("C")).size());
+    }
+
+    @Test
+    public void manySeedsInParallel() {
+        Random random = new Random(7);
+        Graph graph = GraphFactory.createDefaultGraph();
+        int n = 500;
+        for (int i = 0; i < n * 2; i++) {
+            graph.add(Triple.create(node("n" + random.nextInt(n)), CHILD, node("n" + random.nextInt(n))));
+        }
+        CsrGraph csr = CsrGraph.build(graph, CHILD);
+        Map<Node, BitSet> actual = new HashMap<>();
+        TransitiveClosure.over(csr).parallelThreshold(1).pairs()
+                .forEach(pair -> actual.computeIfAbsent(pair.getKey(), k -> new BitSet()).set(csr.id(pair.getValue())));
+        for (int i = 0; i < csr.nodeCount(); i++) {
+            BitSet expected = csr.reachable(i, CsrGraph.Direction.FORWARD);
+            assertEquals(expected, actual.getOrDefault(csr.node(i), new BitSet()));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.asteroid.duck.jena.util;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.asteroid.duck.jena.util.TestData.CHILD;
+import static com.asteroid.duck.jena.util.TestData.TEST_NS;
+import static com.asteroid.duck.jena.util.TestData.testModel;
+import static org.junit.Assert.assertEquals;
+
+public class TripleStreamTest {
+    @Test
+    public void on() {
+        Graph graph = testModel().getGraph();
+        List<String> children = TripleStream.objects(graph, NodeFactory.createURI(TEST_NS + "A"), CHILD)
+                .map(Node::getLocalName)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("B", "C"), children);
+
+        assertEquals(2, TripleStream.subjects(graph, CHILD, null).distinct().count());
+        try (Stream<Triple> triples = TripleStream.on(graph, null, null, null)) {
+            assertEquals(graph.size(), triples.count());
+        }
+    }
+
+    @Test
+    public void model() {
+        Model model = testModel();
+        List<String> labels = TripleStream.on(model, null, RDFS.label, null)
+                .filter(TripleStream.HAS_LITERAL_OBJECT)
+                .map(t -> t.getObject().getLiteralLexicalForm())
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), labels);
+
+        assertEquals(4, TripleStream.on(model, null, model.createProperty(TEST_NS + "child"), null)
+                .filter(TripleStream.HAS_RESOURCE_OBJECT)
+                .count());
+        assertEquals(4, TripleStream.objectURIs(TripleStream.on(model, null, model.createProperty(TEST_NS + "child"), null),
+                new InternPool<>(64)).count());
+    }
+}
@@ -0,0 +1,63 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+public class BatchSpliteratorTest {
+
+    private static List<Integer> numbers(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void splitsInGrowingBatches() {
+        List<Integer> source = numbers(100);
+        BatchSpliterator<Integer> subject = new BatchSpliterator<>(source.iterator(), -1, 4, 16);
+        assertFalse(subject.hasCharacteristics(Spliterator.SIZED));
+        assertTrue(subject.hasCharacteristics(Spliterator.ORDERED | Spliterator.NONNULL));
+
+        List<Integer> sizes = new ArrayList<>();
+        Spliterator<Integer> split;
+        while ((split = subject.trySplit()) != null) {
+            sizes.add((int) split.estimateSize());
+        }
+        // 4 + 8 + 16 + 16 + 16 + 16 + 16 + 8 remaining
+        assertEquals(4, (int) sizes.get(0));
+        assertEquals(8, (int) sizes.get(1));
+        assertEquals(16, (int) sizes.get(2));
+        assertEquals(100, sizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void sizedTracksRemaining() {
+        List<Integer> source = numbers(10);
+        BatchSpliterator<Integer> subject = new BatchSpliterator<>(source.iterator(), source.size(), 4, 4);
+        assertTrue(subject.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(10, subject.estimateSize());
+        Spliterator<Integer> split = subject.trySplit();
+        assertEquals(4, split.estimateSize());
+        assertEquals(6, subject.estimateSize());
+        subject.tryAdvance(i -> assertEquals(4, (int) i));
+        assertEquals(5, subject.estimateSize());
+    }
+
+    @Test
+    public void parallelPreservesOrder() {
+        List<Integer> source = numbers(100_000);
+        List<Integer> result = StreamSupport.stream(new BatchSpliterator<>(source.iterator()), true)
+                .map(i -> i * 2)
+                .collect(Collectors.toList());
+        assertEquals(source.size(), result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i * 2, (int) result.get(i));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NodeNumbersTest {
+
+    private static Node literal(String lex, RDFDatatype type) {
+        return NodeFactory.createLiteral(lex, type);
+    }
+
+    @Test
+    public void datatypeIsChecked() {
+        assertTrue(NodeNumbers.isNumeric(literal("42", XSDDatatype.XSDinteger)));
+        assertTrue(NodeNumbers.isNumeric(literal("42", XSDDatatype.XSDunsignedByte)));
+        assertFalse(NodeNumbers.isNumeric(literal("42", XSDDatatype.XSDstring)));
+        assertFalse(NodeNumbers.isNumeric(NodeFactory.createLiteral("42", "en")));
+        assertFalse(NodeNumbers.isNumeric(NodeFactory.createURI("http://example.org/42")));
+        assertFalse(NodeNumbers.isNumeric(null));
+    }
+
+    @Test
+    public void lexicalSpace() {
+        assertEquals(8.0, NodeNumbers.parseDouble(literal("8e0", XSDDatatype.XSDdouble)), 0.0);
+        assertEquals(0.5, NodeNumbers.parseDouble(literal(".5", XSDDatatype.XSDdecimal)), 0.0);
+        assertEquals(-2.0, NodeNumbers.parseDouble(literal(" -2. ", XSDDatatype.XSDfloat)), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, NodeNumbers.parseDouble(literal("-INF", XSDDatatype.XSDdouble)), 0.0);
+        assertTrue(Double.isNaN(NodeNumbers.parseDouble(literal("NaN", XSDDatatype.XSDdouble))));
+        for (String lex : new String[] { "0x1p3", "Infinity", "1d", "1f", "", "+", ".", "1e", "1.5.2" }) {
+            assertFalse(lex, NodeNumbers.isNumeric(literal(lex, XSDDatatype.XSDdouble)));
+        }
+        // no exponents or special values for decimals, no fractions for integers
+        assertFalse(NodeNumbers.isNumeric(literal("1e3", XSDDatatype.XSDdecimal)));
+        assertFalse(NodeNumbers.isNumeric(literal("INF", XSDDatatype.XSDdecimal)));
+        assertFalse(NodeNumbers.isNumeric(literal("1.0", XSDDatatype.XSDinteger)));
+    }
+
+    @Test
+    public void integers() {
+        assertEquals(Long.MAX_VALUE, NodeNumbers.parseLong(literal("+9223372036854775807", XSDDatatype.XSDinteger)));
+        assertEquals(Long.MIN_VALUE, NodeNumbers.parseLong(literal("-009223372036854775808", XSDDatatype.XSDinteger)));
+        assertFalse(NodeNumbers.isLong(literal("9223372036854775808", XSDDatatype.XSDinteger)));
+        assertEquals(3, NodeNumbers.parseInt(literal("3", XSDDatatype.XSDdouble)));
+        assertEquals(-1, NodeNumbers.toInt(literal("2147483648", XSDDatatype.XSDinteger), -1));
+        assertEquals(-1L, NodeNumbers.toLong(literal("2.5", XSDDatatype.XSDdecimal), -1L));
+        assertEquals(-1.0, NodeNumbers.toDouble(literal("x", XSDDatatype.XSDstring), -1.0), 0.0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseFails() {
+        NodeNumbers.parseDouble(literal("42", XSDDatatype.XSDstring));
+    }
+}
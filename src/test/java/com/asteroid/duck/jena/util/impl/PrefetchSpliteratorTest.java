@@ -0,0 +1,124 @@
+package com.asteroid.duck.jena.util.impl;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+public class PrefetchSpliteratorTest {
+
+    private static Stream<Integer> prefetch(Iterator<Integer> source, boolean parallel) {
+        PrefetchSpliterator<Integer> spliterator = new PrefetchSpliterator<>(source, 10, 2);
+        return StreamSupport.stream(spliterator, parallel).onClose(spliterator::close);
+    }
+
+    @Test
+    public void allElementsInOrder() {
+        List<Integer> source = IntStream.range(0, 1005).boxed().collect(Collectors.toList());
+        assertEquals(source, prefetch(source.iterator(), false).collect(Collectors.toList()));
+        assertEquals(source, prefetch(source.iterator(), true).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void sourceFailureIsRethrown() {
+        Iterator<Integer> failing = new Iterator<Integer>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                if (i == 25) {
+                    throw new IllegalArgumentException("Boom");
+                }
+                return i++;
+            }
+        };
+        AtomicInteger seen = new AtomicInteger();
+        try (Stream<Integer> stream = prefetch(failing, false)) {
+            stream.forEach(i -> seen.incrementAndGet());
+            fail("Expected exception");
+        }
+        catch(IllegalArgumentException e) {
+            assertEquals("Boom", e.getMessage());
+        }
+        assertEquals(25, seen.get());
+    }
+
+    @Test
+    public void closeStopsProducer() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        Iterator<Integer> endless = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return produced.incrementAndGet();
+            }
+        };
+        try (Stream<Integer> stream = prefetch(endless, false)) {
+            assertEquals(Integer.valueOf(1), stream.findFirst().get());
+        }
+        Thread.sleep(300);
+        int count = produced.get();
+        // bounded by the buffer (2 batches of 10) plus the batch in progress
+        assertTrue(count <= 40);
+        Thread.sleep(300);
+        assertEquals(count, produced.get());
+    }
+
+    @Test
+    public void closeWakesBlockedConsumer() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Iterator<Integer> stalled = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    release.await();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+
+            @Override
+            public Integer next() {
+                throw new NoSuchElementException();
+            }
+        };
+        PrefetchSpliterator<Integer> spliterator = new PrefetchSpliterator<>(stalled, 10, 2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                spliterator.tryAdvance(i -> { });
+            }
+            catch(Throwable t) {
+                thrown.set(t);
+            }
+        });
+        consumer.start();
+        Thread.sleep(200);
+        spliterator.close();
+        consumer.join(2000);
+        release.countDown();
+        assertFalse(consumer.isAlive());
+        assertTrue(thrown.get() instanceof IllegalStateException);
+    }
+}
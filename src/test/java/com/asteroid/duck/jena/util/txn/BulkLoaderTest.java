@@ -0,0 +1,92 @@
+package com.asteroid.duck.jena.util.txn;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkLoaderTest {
+    private static final String TEST_NS = "http://example.org/test#";
+
+    private static List<Triple> triples(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> Triple.create(NodeFactory.createURI(TEST_NS + i), NodeFactory.createURI(TEST_NS + "p"),
+                        NodeFactory.createLiteral("value " + i)))
+                .collect(Collectors.toList());
+    }
+
+    private static long size(Dataset dataset) {
+        return JenaTransaction.readWith(() -> dataset.getDefaultModel().size(), dataset);
+    }
+
+    @Test
+    public void load() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        List<BulkLoader.Report> progress = new ArrayList<>();
+        BulkLoader.Report report = BulkLoader.into(dataset)
+                .batchSize(1000)
+                .batchesPerCommit(4)
+                .progress(progress::add)
+                .loadTriples(triples(25_005).stream());
+        assertEquals(25_005, report.getLoaded());
+        assertEquals(25_005, report.getPosition());
+        // 26 batches, 4 per commit
+        assertEquals(7, report.getCommits());
+        assertEquals(7, progress.size());
+        assertEquals(4000, progress.get(0).getLoaded());
+        assertEquals(25_005, size(dataset));
+    }
+
+    @Test
+    public void statements() {
+        Model source = ModelFactory.createDefaultModel();
+        Property p = source.createProperty(TEST_NS + "p");
+        for (int i = 0; i < 100; i++) {
+            source.add(source.createResource(TEST_NS + i), p, "value " + i);
+        }
+        Dataset dataset = DatasetFactory.createTxnMem();
+        BulkLoader.Report report = BulkLoader.into(dataset).graph(TEST_NS + "graph").batchSize(7)
+                .load(source.listStatements().toList().stream());
+        assertEquals(100, report.getLoaded());
+        assertEquals(100L, (long) JenaTransaction.readWith(() -> dataset.getNamedModel(TEST_NS + "graph").size(), dataset));
+        assertEquals(0, size(dataset));
+    }
+
+    @Test
+    public void failedBatchSkipped() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        List<Triple> triples = triples(1000);
+        // a null triple cannot be added: its batch (500 to 599) fails
+        triples.set(550, null);
+        BulkLoader.Report report = BulkLoader.into(dataset)
+                .batchSize(100)
+                .batchesPerCommit(3)
+                .loadTriples(triples.stream());
+        assertEquals(900, report.getLoaded());
+        assertEquals(1000, report.getPosition());
+        assertEquals(1, report.getFailures().size());
+        assertEquals(500, report.getFailures().get(0).getPosition());
+        assertEquals(100, report.getFailures().get(0).getSize());
+        assertEquals(900, size(dataset));
+    }
+
+    @Test
+    public void resume() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        BulkLoader.Report report = BulkLoader.into(dataset).batchSize(100).skip(250).loadTriples(triples(1000).stream());
+        assertEquals(750, report.getLoaded());
+        assertEquals(1000, report.getPosition());
+        assertEquals(750, size(dataset));
+    }
+}
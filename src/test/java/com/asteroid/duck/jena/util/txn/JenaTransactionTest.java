@@ -8,6 +8,7 @@ import org.mockito.Mockito;
 import org.mockito.verification.VerificationMode;
 
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static org.junit.Assert.*;
@@ -286,6 +287,22 @@ public class JenaTransactionTest {
         Mockito.verify(dataset, Mockito.times(1)).commit();
     }
 
+    @Test
+    public void commitListener() {
+        Dataset dataset = Mockito.mock(Dataset.class);
+        Consumer<Dataset> listener = Mockito.mock(Consumer.class);
+        JenaTransaction.addCommitListener(listener);
+        try {
+            JenaTransaction.writeWithCommit(() -> JenaTransaction.writeWithCommit(() -> "nested", dataset), dataset);
+            Mockito.verify(listener, once()).accept(dataset);
+
+            JenaTransaction.runWith(txn -> { txn.commit(); return null; }, dataset, ReadWrite.READ);
+            Mockito.verify(listener, once()).accept(dataset);
+        } finally {
+            JenaTransaction.removeCommitListener(listener);
+        }
+    }
+
 
     public static VerificationMode once() {
         return Mockito.times(1);
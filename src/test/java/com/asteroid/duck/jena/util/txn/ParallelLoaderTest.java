@@ -0,0 +1,91 @@
+package com.asteroid.duck.jena.util.txn;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.Lang;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelLoaderTest {
+    private static final String TEST_NS = "http://example.org/test#";
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("parallel", ".nq");
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 20_000; i++) {
+                // blank node labels recur throughout the file, so in many different chunks
+                out.write("_:b" + (i % 10) + " <" + TEST_NS + "p> \"value " + i + "\"");
+                if (i % 2 == 1) {
+                    out.write(" <" + TEST_NS + "graph>");
+                }
+                out.write(" .\n");
+            }
+        }
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void quads() {
+        Dataset dataset = DatasetFactory.createTxnMem();
+        BulkLoader.Report report = ParallelLoader.from(file)
+                .threads(3)
+                .chunkSize(4096)
+                .load(BulkLoader.into(dataset).batchSize(1000));
+        assertEquals(20_000, report.getLoaded());
+        assertTrue(report.getFailures().isEmpty());
+
+        JenaTransaction.readWith(() -> {
+            Model defaultModel = dataset.getDefaultModel();
+            Model named = dataset.getNamedModel(TEST_NS + "graph");
+            assertEquals(10_000, defaultModel.size());
+            assertEquals(10_000, named.size());
+            Set<Node> subjects = defaultModel.listSubjects().toList().stream().map(RDFNode::asNode).collect(Collectors.toSet());
+            // even labels only in the default graph
+            assertEquals(5, subjects.size());
+            Set<Node> namedSubjects = named.listSubjects().toList().stream().map(RDFNode::asNode).collect(Collectors.toSet());
+            assertEquals(5, namedSubjects.size());
+            return null;
+        }, dataset);
+    }
+
+    @Test
+    public void triples() throws IOException {
+        Path nt = Files.createTempFile("parallel", ".nt");
+        try {
+            Files.write(nt, Files.readAllLines(file).stream()
+                    .map(line -> line.replace(" <" + TEST_NS + "graph>", ""))
+                    .collect(Collectors.toList()));
+            Dataset dataset = DatasetFactory.createTxnMem();
+            BulkLoader.Report report = ParallelLoader.from(nt).lang(Lang.NTRIPLES).threads(2).chunkSize(1000)
+                    .load(BulkLoader.into(dataset));
+            assertEquals(20_000, report.getLoaded());
+            long subjects = JenaTransaction.readWith(() -> (long) dataset.getDefaultModel().listSubjects().toList().size(), dataset);
+            assertEquals(10, subjects);
+        }
+        finally {
+            Files.deleteIfExists(nt);
+        }
+    }
+}